@@ -0,0 +1,91 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsResponse;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolveReason;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolvedFlag;
+import com.spotify.confidence.shaded.flags.types.v1.FlagSchema;
+import com.spotify.confidence.shaded.flags.types.v1.FlagSchema.StructFlagSchema;
+
+/** Flags shared by the benchmarks, shaped like typical production flags. */
+final class BenchmarkFlags {
+
+  static final String FLAG_NAME = "flags/benchmark-flag";
+
+  private BenchmarkFlags() {}
+
+  static ResolvedFlag resolvedFlag() {
+    final Struct nested =
+        Struct.newBuilder()
+            .putFields("title", Value.newBuilder().setStringValue("Hello").build())
+            .putFields("ratio", Value.newBuilder().setNumberValue(0.75).build())
+            .build();
+    final Struct value =
+        Struct.newBuilder()
+            .putFields("enabled", Value.newBuilder().setBoolValue(true).build())
+            .putFields("limit", Value.newBuilder().setNumberValue(50).build())
+            .putFields("color", Value.newBuilder().setStringValue("green").build())
+            .putFields(
+                "tags",
+                Value.newBuilder()
+                    .setListValue(
+                        ListValue.newBuilder()
+                            .addValues(Value.newBuilder().setStringValue("a"))
+                            .addValues(Value.newBuilder().setStringValue("b")))
+                    .build())
+            .putFields("copy", Value.newBuilder().setStructValue(nested).build())
+            .build();
+    final StructFlagSchema nestedSchema =
+        StructFlagSchema.newBuilder()
+            .putSchema("title", stringSchema())
+            .putSchema(
+                "ratio",
+                FlagSchema.newBuilder()
+                    .setDoubleSchema(FlagSchema.DoubleFlagSchema.getDefaultInstance())
+                    .build())
+            .build();
+    final StructFlagSchema schema =
+        StructFlagSchema.newBuilder()
+            .putSchema(
+                "enabled",
+                FlagSchema.newBuilder()
+                    .setBoolSchema(FlagSchema.BoolFlagSchema.getDefaultInstance())
+                    .build())
+            .putSchema(
+                "limit",
+                FlagSchema.newBuilder()
+                    .setIntSchema(FlagSchema.IntFlagSchema.getDefaultInstance())
+                    .build())
+            .putSchema("color", stringSchema())
+            .putSchema(
+                "tags",
+                FlagSchema.newBuilder()
+                    .setListSchema(
+                        FlagSchema.ListFlagSchema.newBuilder().setElementSchema(stringSchema()))
+                    .build())
+            .putSchema("copy", FlagSchema.newBuilder().setStructSchema(nestedSchema).build())
+            .build();
+    return ResolvedFlag.newBuilder()
+        .setFlag(FLAG_NAME)
+        .setVariant(FLAG_NAME + "/variants/treatment")
+        .setValue(value)
+        .setFlagSchema(schema)
+        .setReason(ResolveReason.RESOLVE_REASON_MATCH)
+        .build();
+  }
+
+  static ResolveFlagsResponse resolveResponse() {
+    return ResolveFlagsResponse.newBuilder()
+        .addResolvedFlags(resolvedFlag())
+        .setResolveId("benchmark-resolve")
+        .build();
+  }
+
+  private static FlagSchema stringSchema() {
+    return FlagSchema.newBuilder()
+        .setStringSchema(FlagSchema.StringFlagSchema.getDefaultInstance())
+        .build();
+  }
+}
@@ -0,0 +1,112 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.Struct;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsResponse;
+import dev.openfeature.sdk.EvaluationContext;
+import dev.openfeature.sdk.MutableContext;
+import dev.openfeature.sdk.Value;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how evaluation contexts are assembled: {@link Confidence#getContext()} on chains of
+ * child instances, and the conversion of OpenFeature contexts in the provider.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContextBenchmark {
+
+  /** Number of {@link Confidence#withContext(Map)} calls between the root and the leaf. */
+  @Param({"1", "4", "16"})
+  public int depth;
+
+  private Confidence root;
+  private Confidence leaf;
+  private EvaluationContext openFeatureContext;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    root = Confidence.create(new NoopEventSenderEngine(), new NoopFlagResolverClient());
+    root.setContext(Map.of("app_version", ConfidenceValue.of("1.2.3")));
+    Confidence confidence = root;
+    for (int i = 0; i < depth; i++) {
+      confidence =
+          confidence.withContext(
+              Map.of(
+                  "key-" + i,
+                  ConfidenceValue.of("value-" + i),
+                  "targeting_key",
+                  ConfidenceValue.of("user-" + i)));
+    }
+    leaf = confidence;
+
+    final MutableContext context = new MutableContext("user-1");
+    context.add("country", "SE");
+    context.add("premium", true);
+    context.add("age", 42);
+    context.add("score", 0.5);
+    context.add(
+        "device", new MutableContext(Map.of("os", new Value("android"), "version", new Value(13))));
+    context.add("experiments", List.of(new Value("a"), new Value("b"), new Value("c")));
+    openFeatureContext = context;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    root.close();
+  }
+
+  @Benchmark
+  public ConfidenceValue.Struct getContext() {
+    return leaf.getContext();
+  }
+
+  @Benchmark
+  public Struct convertToProto() {
+    return OpenFeatureUtils.convertToProto(openFeatureContext);
+  }
+
+  static class NoopEventSenderEngine implements EventSenderEngine {
+    @Override
+    public void emit(
+        String name, ConfidenceValue.Struct context, Optional<ConfidenceValue.Struct> data) {}
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+  }
+
+  static class NoopFlagResolverClient implements FlagResolverClient {
+    @Override
+    public CompletableFuture<ResolveFlagsResponse> resolveFlags(
+        List<String> flags, ConfidenceValue.Struct context, Boolean isProvider) {
+      return CompletableFuture.completedFuture(ResolveFlagsResponse.getDefaultInstance());
+    }
+
+    @Override
+    public void close() {}
+  }
+}
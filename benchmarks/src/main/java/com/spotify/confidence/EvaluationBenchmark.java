@@ -0,0 +1,104 @@
+package com.spotify.confidence;
+
+import com.spotify.confidence.shaded.flags.resolver.v1.FlagResolverServiceGrpc.FlagResolverServiceImplBase;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsRequest;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsResponse;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Confidence#getEvaluation(String, Object)} end to end, against an in-process gRPC
+ * server that stands in for the resolver backend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EvaluationBenchmark {
+  private static final FlagKey<Integer> LIMIT =
+      Confidence.flag("benchmark-flag.limit", Integer.class);
+
+  @Param({"false", "true"})
+  public boolean resolveCache;
+
+  private Server server;
+  private ManagedChannel channel;
+  private Confidence root;
+  private Confidence confidence;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    final String serverName = InProcessServerBuilder.generateName();
+    final ResolveFlagsResponse response = BenchmarkFlags.resolveResponse();
+    server =
+        InProcessServerBuilder.forName(serverName)
+            .directExecutor()
+            .addService(
+                new FlagResolverServiceImplBase() {
+                  @Override
+                  public void resolveFlags(
+                      ResolveFlagsRequest request,
+                      StreamObserver<ResolveFlagsResponse> responseObserver) {
+                    responseObserver.onNext(response);
+                    responseObserver.onCompleted();
+                  }
+                })
+            .build()
+            .start();
+    channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+    final Confidence.Builder builder =
+        Confidence.builder("benchmark-secret").flagResolverManagedChannel(channel);
+    if (resolveCache) {
+      builder.resolveCache(1_000, Duration.ofMinutes(10));
+    }
+    root = builder.build();
+    confidence =
+        root.withContext(
+            Map.of(
+                "targeting_key", ConfidenceValue.of("user-1"),
+                "country", ConfidenceValue.of("SE")));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    root.close();
+    server.shutdownNow();
+  }
+
+  @Benchmark
+  public FlagEvaluation<Integer> getEvaluation() {
+    return confidence.getEvaluation("benchmark-flag.limit", 0);
+  }
+
+  @Benchmark
+  public FlagEvaluation<String> getNestedEvaluation() {
+    return confidence.getEvaluation("benchmark-flag.copy.title", "");
+  }
+
+  @Benchmark
+  public int getInt() {
+    return confidence.getInt(LIMIT, 0);
+  }
+}
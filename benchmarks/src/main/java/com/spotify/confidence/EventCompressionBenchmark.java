@@ -0,0 +1,88 @@
+package com.spotify.confidence;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import com.spotify.confidence.events.v1.PublishEventsRequest;
+import io.grpc.Compressor;
+import io.grpc.CompressorRegistry;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of compressing a batch of events the way {@link GrpcEventUploader} sends it.
+ * The size of the batch on the wire, compared to the uncompressed request, is printed once per
+ * trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventCompressionBenchmark {
+
+  @Param({"identity", "gzip"})
+  public String compression;
+
+  @Param({"25", "500"})
+  public int batchSize;
+
+  private Compressor compressor;
+  private byte[] request;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    compressor = CompressorRegistry.getDefaultInstance().lookupCompressor(compression);
+    final PublishEventsRequest.Builder builder =
+        PublishEventsRequest.newBuilder().setClientSecret("benchmark-secret");
+    for (int i = 0; i < batchSize; i++) {
+      // events of a batch typically come from a few users, and share their context
+      final ConfidenceValue.Struct context =
+          ConfidenceValue.of(
+              Map.of(
+                  "targeting_key", ConfidenceValue.of("user-" + (i % 5)),
+                  "country", ConfidenceValue.of("SE"),
+                  "platform", ConfidenceValue.of("android"),
+                  "app_version", ConfidenceValue.of("8.9.12")));
+      builder.addEvents(
+          EventUploader.event(
+                  "playback-started",
+                  context,
+                  Optional.of(
+                      ConfidenceValue.of(
+                          Map.of(
+                              "track", ConfidenceValue.of("track-" + i),
+                              "position_ms", ConfidenceValue.of(i * 1000)))))
+              .build());
+    }
+    request = builder.build().toByteArray();
+    final long wireBytes = compress();
+    System.out.printf(
+        "%n%d events with %s compression: %d request bytes, %d bytes on the wire (%.1f%%)%n",
+        batchSize, compression, request.length, wireBytes, 100.0 * wireBytes / request.length);
+  }
+
+  @Benchmark
+  public long compress() throws IOException {
+    final CountingOutputStream wire = new CountingOutputStream(ByteStreams.nullOutputStream());
+    try (OutputStream out = compressor.compress(wire)) {
+      out.write(request);
+    }
+    return wire.getCount();
+  }
+}
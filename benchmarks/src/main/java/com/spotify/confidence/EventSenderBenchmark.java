@@ -0,0 +1,65 @@
+package com.spotify.confidence;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of {@link EventSenderEngineImpl#emit} from several threads, with an
+ * uploader that accepts every batch immediately.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class EventSenderBenchmark {
+
+  private final ConfidenceValue.Struct context =
+      ConfidenceValue.of(
+          Map.of(
+              "targeting_key", ConfidenceValue.of("user-1"),
+              "country", ConfidenceValue.of("SE")));
+  private final Optional<ConfidenceValue.Struct> data =
+      Optional.of(ConfidenceValue.of(Map.of("button", ConfidenceValue.of("play"))));
+  private EventSenderEngineImpl engine;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    engine =
+        new EventSenderEngineImpl(
+            EventSenderEngineImpl.DEFAULT_BATCH_SIZE,
+            events -> CompletableFuture.completedFuture(true),
+            Instant::now,
+            EventSenderEngineImpl.DEFAULT_MAX_FLUSH_INTERVAL,
+            EventSenderEngineImpl.DEFAULT_MAX_MEMORY_CONSUMPTION);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    engine.close();
+  }
+
+  @Benchmark
+  public void emit() {
+    engine.emit("benchmark-event", context, data);
+  }
+}
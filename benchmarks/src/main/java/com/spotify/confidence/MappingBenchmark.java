@@ -0,0 +1,56 @@
+package com.spotify.confidence;
+
+import com.spotify.confidence.ConfidenceUtils.FlagPath;
+import com.spotify.confidence.Exceptions.IllegalValuePath;
+import com.spotify.confidence.Exceptions.ValueNotFound;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolvedFlag;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the per-evaluation work of parsing flag keys and decoding resolved flag values. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+
+  private static final List<String> COPY_TITLE = List.of("copy", "title");
+  private final ResolvedFlag resolvedFlag = BenchmarkFlags.resolvedFlag();
+
+  @Benchmark
+  public ConfidenceValue typeMapperFrom() {
+    return ConfidenceTypeMapper.from(resolvedFlag.getValue(), resolvedFlag.getFlagSchema());
+  }
+
+  @Benchmark
+  public ConfidenceValue typeMapperFromPath() throws ValueNotFound {
+    return ConfidenceTypeMapper.from(resolvedFlag, COPY_TITLE);
+  }
+
+  @Benchmark
+  public ConfidenceValue typeMapperFromPathUncached() throws ValueNotFound {
+    // a new resolve of the same flag, as served without a resolve cache
+    return ConfidenceTypeMapper.from(resolvedFlag.toBuilder().build(), COPY_TITLE);
+  }
+
+  @Benchmark
+  public FlagPath flagPath() throws IllegalValuePath {
+    return FlagPath.getPath("benchmark-flag.copy.title");
+  }
+
+  @Benchmark
+  public FlagPath flagPathWithoutPath() throws IllegalValuePath {
+    return FlagPath.getPath("benchmark-flag");
+  }
+}
@@ -2,32 +2,53 @@ package com.spotify.confidence;
 
 import static com.spotify.confidence.FlagResolverClientImpl.OPEN_FEATURE_RESOLVE_CONTEXT_KEY;
 
+import com.google.common.collect.Sets;
 import com.google.protobuf.Struct;
 import com.spotify.confidence.ConfidenceUtils.FlagPath;
 import com.spotify.confidence.Exceptions.IllegalValuePath;
+import com.spotify.confidence.OpenFeatureTypeMapper.ValueConverter;
 import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsResponse;
 import com.spotify.confidence.shaded.flags.resolver.v1.ResolvedFlag;
 import dev.openfeature.sdk.EvaluationContext;
-import dev.openfeature.sdk.FeatureProvider;
+import dev.openfeature.sdk.EventProvider;
 import dev.openfeature.sdk.Metadata;
 import dev.openfeature.sdk.ProviderEvaluation;
+import dev.openfeature.sdk.ProviderEventDetails;
+import dev.openfeature.sdk.ProviderState;
 import dev.openfeature.sdk.Value;
 import dev.openfeature.sdk.exceptions.FlagNotFoundError;
 import dev.openfeature.sdk.exceptions.GeneralError;
-import dev.openfeature.sdk.exceptions.TypeMismatchError;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 import io.grpc.Status.Code;
 import io.grpc.StatusRuntimeException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
-import java.util.function.Function;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 
 /** OpenFeature Provider for feature flagging with the Confidence platform */
-public class ConfidenceFeatureProvider implements FeatureProvider {
+public class ConfidenceFeatureProvider extends EventProvider {
 
   private final Confidence confidence;
+  private final List<String> prefetchFlags;
+  @Nullable private final Duration refreshInterval;
+  @Nullable private ScheduledExecutorService refreshExecutor;
+  @Nullable private EvaluationContext staticContext;
+  // incremented by initialize and shutdown, so that resolves started before them are discarded
+  private long generation = 0;
+  @Nullable private volatile Prefetch prefetch;
+  private volatile ProviderState state = ProviderState.NOT_READY;
+  private volatile boolean stale = false;
 
   /**
    * ConfidenceFeatureProvider constructor
@@ -36,6 +57,42 @@ public class ConfidenceFeatureProvider implements FeatureProvider {
    */
   public ConfidenceFeatureProvider(Confidence confidence) {
     this.confidence = confidence;
+    this.prefetchFlags = List.of();
+    this.refreshInterval = null;
+  }
+
+  /**
+   * ConfidenceFeatureProvider constructor that prefetches flags when the provider is initialized.
+   *
+   * <p>The given flags are resolved in a single request for the static evaluation context that the
+   * provider is initialized with, and evaluations in that context are served from memory. The
+   * prefetched flags are refreshed at the given interval; a changed value emits {@code
+   * PROVIDER_CONFIGURATION_CHANGED}, a failed refresh emits {@code PROVIDER_STALE} and the next
+   * successful one {@code PROVIDER_READY}.
+   *
+   * <p>Prefetching and refreshing would apply every prefetched flag, whether it is evaluated or
+   * not, so {@code confidence} must be built with {@link Confidence.Builder#deferredApply()}. The
+   * flags are then resolved without being applied, and a prefetched flag is applied when it is
+   * evaluated.
+   *
+   * @param confidence an instance of the Confidence, configured to defer applies
+   * @param prefetchFlags names of the flags to prefetch, without the {@code flags/} prefix
+   * @param refreshInterval how often the prefetched flags are refreshed
+   * @throws IllegalArgumentException if {@code confidence} doesn't defer applies
+   */
+  public ConfidenceFeatureProvider(
+      Confidence confidence, List<String> prefetchFlags, Duration refreshInterval) {
+    if (refreshInterval.isZero() || refreshInterval.isNegative()) {
+      throw new IllegalArgumentException("refreshInterval must be positive");
+    }
+    if (!confidence.defersApply()) {
+      throw new IllegalArgumentException(
+          "Prefetching flags requires Confidence.Builder#deferredApply, "
+              + "so that prefetched flags are only applied when they are evaluated");
+    }
+    this.confidence = confidence;
+    this.prefetchFlags = List.copyOf(prefetchFlags);
+    this.refreshInterval = refreshInterval;
   }
 
   private static final Logger log =
@@ -86,62 +143,198 @@ public class ConfidenceFeatureProvider implements FeatureProvider {
     return () -> "com.spotify.confidence.flags.resolver.v1.FlagResolverService";
   }
 
+  @Override
+  public ProviderState getState() {
+    return state;
+  }
+
+  @Override
+  public void initialize(EvaluationContext evaluationContext) {
+    final long generation;
+    synchronized (this) {
+      staticContext = evaluationContext;
+      generation = ++this.generation;
+      if (prefetchFlags.isEmpty()) {
+        state = ProviderState.READY;
+        return;
+      }
+      if (refreshInterval != null && refreshExecutor == null) {
+        refreshExecutor =
+            Executors.newSingleThreadScheduledExecutor(
+                runnable -> {
+                  final Thread thread = new Thread(runnable, "confidence-provider-refresh");
+                  thread.setDaemon(true);
+                  return thread;
+                });
+        refreshExecutor.scheduleWithFixedDelay(
+            this::refresh,
+            refreshInterval.toMillis(),
+            refreshInterval.toMillis(),
+            TimeUnit.MILLISECONDS);
+      }
+    }
+    final Prefetch next;
+    try {
+      next = prefetch(evaluationContext);
+    } catch (InterruptedException | ExecutionException | RuntimeException e) {
+      synchronized (this) {
+        if (generation == this.generation) {
+          // the refresh keeps trying, and emits PROVIDER_READY once the flags could be prefetched
+          state = ProviderState.ERROR;
+        }
+      }
+      log.warn("Failed to prefetch flags {}", prefetchFlags, e);
+      throw new GeneralError(String.format("Failed to prefetch flags: %s", e.getMessage()));
+    }
+    synchronized (this) {
+      if (generation == this.generation) {
+        prefetch = next;
+        state = ProviderState.READY;
+      }
+    }
+  }
+
+  @Override
+  public synchronized void shutdown() {
+    if (refreshExecutor != null) {
+      refreshExecutor.shutdownNow();
+      refreshExecutor = null;
+    }
+    generation++;
+    staticContext = null;
+    prefetch = null;
+    stale = false;
+    state = ProviderState.NOT_READY;
+  }
+
+  /**
+   * Resolves the prefetched flags again and emits provider events for the outcome.
+   *
+   * <p>The flags are resolved without holding the provider lock, so that a slow resolve doesn't
+   * block {@link #shutdown()} or {@link #initialize(EvaluationContext)}; a resolve that completes
+   * after either of them is discarded.
+   */
+  void refresh() {
+    final EvaluationContext context;
+    final long generation;
+    synchronized (this) {
+      if (staticContext == null) {
+        return;
+      }
+      context = staticContext;
+      generation = this.generation;
+    }
+    final Prefetch next;
+    try {
+      next = prefetch(context);
+    } catch (InterruptedException | ExecutionException | RuntimeException e) {
+      synchronized (this) {
+        if (generation != this.generation) {
+          return;
+        }
+        log.warn("Failed to refresh prefetched flags {}: {}", prefetchFlags, e.getMessage());
+        if (state == ProviderState.READY && !stale) {
+          // evaluations are still served from the previous prefetch, but marked as stale
+          stale = true;
+          emitProviderStale(
+              ProviderEventDetails.builder()
+                  .message(String.format("Failed to refresh flags: %s", e.getMessage()))
+                  .build());
+        }
+      }
+      return;
+    }
+    synchronized (this) {
+      if (generation != this.generation) {
+        return;
+      }
+      final Prefetch previous = prefetch;
+      prefetch = next;
+      if (state != ProviderState.READY || stale) {
+        state = ProviderState.READY;
+        stale = false;
+        emitProviderReady(ProviderEventDetails.builder().build());
+      }
+      if (previous != null) {
+        final List<String> flagsChanged = next.flagsChangedSince(previous);
+        if (!flagsChanged.isEmpty()) {
+          emitProviderConfigurationChanged(
+              ProviderEventDetails.builder().flagsChanged(flagsChanged).build());
+        }
+      }
+    }
+  }
+
+  private Prefetch prefetch(EvaluationContext ctx) throws InterruptedException, ExecutionException {
+    final Struct evaluationContext = OpenFeatureUtils.convertToProto(ctx);
+    final ConfidenceValue.Struct confidenceContext = confidence.getContext();
+    final ResolveFlagsResponse response =
+        confidence
+            .withContext(
+                Map.of(
+                    OPEN_FEATURE_RESOLVE_CONTEXT_KEY,
+                    ConfidenceValue.Struct.fromProto(evaluationContext)))
+            .refreshFlags(
+                prefetchFlags.stream().map(flag -> "flags/" + flag).collect(Collectors.toList()),
+                true)
+            .get();
+    final Map<String, ResolveFlagsResponse> responses = new HashMap<>();
+    for (ResolvedFlag resolvedFlag : response.getResolvedFlagsList()) {
+      // each flag gets a response of its own, sharing the resolve token of the prefetch
+      responses.put(
+          resolvedFlag.getFlag(),
+          response.toBuilder().clearResolvedFlags().addResolvedFlags(resolvedFlag).build());
+    }
+    return new Prefetch(confidenceContext, evaluationContext, responses);
+  }
+
+  @Nullable
+  private ResolveFlagsResponse prefetchedResolve(String flagName, Struct evaluationContext) {
+    final Prefetch current = prefetch;
+    if (current == null
+        || !current.evaluationContext.equals(evaluationContext)
+        || !current.confidenceContext.equals(confidence.getContext())) {
+      return null;
+    }
+    return current.responses.get(flagName);
+  }
+
   @Override
   public ProviderEvaluation<Boolean> getBooleanEvaluation(
       String key, Boolean defaultValue, EvaluationContext ctx) {
-    return getCastedEvaluation(key, defaultValue, ctx, Value::asBoolean);
+    return getEvaluation(key, defaultValue, ctx, OpenFeatureTypeMapper.BOOLEAN);
   }
 
   @Override
   public ProviderEvaluation<String> getStringEvaluation(
       String key, String defaultValue, EvaluationContext ctx) {
-    return getCastedEvaluation(key, defaultValue, ctx, Value::asString);
+    return getEvaluation(key, defaultValue, ctx, OpenFeatureTypeMapper.STRING);
   }
 
   @Override
   public ProviderEvaluation<Integer> getIntegerEvaluation(
       String key, Integer defaultValue, EvaluationContext ctx) {
-    return getCastedEvaluation(key, defaultValue, ctx, Value::asInteger);
+    return getEvaluation(key, defaultValue, ctx, OpenFeatureTypeMapper.INTEGER);
   }
 
   @Override
   public ProviderEvaluation<Double> getDoubleEvaluation(
       String key, Double defaultValue, EvaluationContext ctx) {
-    return getCastedEvaluation(key, defaultValue, ctx, Value::asDouble);
-  }
-
-  private <T> ProviderEvaluation<T> getCastedEvaluation(
-      String key, T defaultValue, EvaluationContext ctx, Function<Value, T> cast) {
-    final Value wrappedDefaultValue;
-    try {
-      wrappedDefaultValue = new Value(defaultValue);
-    } catch (InstantiationException e) {
-      // this is not going to happen because we only call the constructor with supported types
-      throw new RuntimeException(e);
-    }
-
-    final ProviderEvaluation<Value> objectEvaluation =
-        getObjectEvaluation(key, wrappedDefaultValue, ctx);
-
-    final T castedValue = cast.apply(objectEvaluation.getValue());
-    if (castedValue == null) {
-      log.warn("Cannot cast value '{}' to expected type", objectEvaluation.getValue().toString());
-      throw new TypeMismatchError(
-          String.format("Cannot cast value '%s' to expected type", objectEvaluation.getValue()));
-    }
-
-    return ProviderEvaluation.<T>builder()
-        .value(castedValue)
-        .variant(objectEvaluation.getVariant())
-        .reason(objectEvaluation.getReason())
-        .errorMessage(objectEvaluation.getErrorMessage())
-        .errorCode(objectEvaluation.getErrorCode())
-        .build();
+    return getEvaluation(key, defaultValue, ctx, OpenFeatureTypeMapper.DOUBLE);
   }
 
   @Override
   public ProviderEvaluation<Value> getObjectEvaluation(
       String key, Value defaultValue, EvaluationContext ctx) {
+    return getEvaluation(key, defaultValue, ctx, OpenFeatureTypeMapper.VALUE);
+  }
+
+  /**
+   * Evaluates a flag, converting the proto value at the path of the key directly to the type of the
+   * evaluation, without decoding the rest of the flag value.
+   */
+  private <T> ProviderEvaluation<T> getEvaluation(
+      String key, T defaultValue, EvaluationContext ctx, ValueConverter<T> converter) {
 
     final FlagPath flagPath;
     try {
@@ -152,75 +345,98 @@ public class ConfidenceFeatureProvider implements FeatureProvider {
     }
 
     final Struct evaluationContext = OpenFeatureUtils.convertToProto(ctx);
-    // resolve the flag by calling the resolver API
-    final ResolveFlagsResponse resolveFlagResponse;
+    final String requestFlagName = "flags/" + flagPath.getFlag();
+    final Confidence resolveConfidence =
+        confidence.withContext(
+            Map.of(
+                OPEN_FEATURE_RESOLVE_CONTEXT_KEY,
+                ConfidenceValue.Struct.fromProto(evaluationContext)));
+    // serve a prefetched flag from memory, otherwise resolve it by calling the resolver API
+    ResolveFlagsResponse resolveFlagResponse =
+        prefetchedResolve(requestFlagName, evaluationContext);
+    boolean stale = resolveFlagResponse != null && this.stale;
+    // resolves from the history may be from an earlier process, so their tokens aren't applied
+    boolean fromHistory = false;
     try {
-      final String requestFlagName = "flags/" + flagPath.getFlag();
-
-      resolveFlagResponse =
-          confidence
-              .withContext(
-                  Map.of(
-                      OPEN_FEATURE_RESOLVE_CONTEXT_KEY,
-                      ConfidenceValue.Struct.fromProto(evaluationContext)))
-              .resolveFlags(requestFlagName, true)
-              .get();
-
-      if (resolveFlagResponse.getResolvedFlagsList().isEmpty()) {
-        log.warn("No active flag '{}' was found", flagPath.getFlag());
-        throw new FlagNotFoundError(
-            String.format("No active flag '%s' was found", flagPath.getFlag()));
+      if (resolveFlagResponse == null) {
+        resolveFlagResponse = resolveConfidence.resolveFlags(requestFlagName, true).get();
       }
-
-      final String responseFlagName = resolveFlagResponse.getResolvedFlags(0).getFlag();
-      if (!requestFlagName.equals(responseFlagName)) {
-        log.warn("Unexpected flag '{}' from remote", responseFlagName.replaceFirst("^flags/", ""));
-        throw new FlagNotFoundError(
-            String.format(
-                "Unexpected flag '%s' from remote", responseFlagName.replaceFirst("^flags/", "")));
+    } catch (StatusRuntimeException | InterruptedException | ExecutionException e) {
+      final StatusRuntimeException statusException =
+          e instanceof StatusRuntimeException
+              ? (StatusRuntimeException) e
+              : e.getCause() instanceof StatusRuntimeException
+                  ? (StatusRuntimeException) e.getCause()
+                  : null;
+      if (statusException != null
+          && statusException.getStatus().getCode() == Code.DEADLINE_EXCEEDED) {
+        confidence.recordDeadlineExceeded();
       }
-
-      final ResolvedFlag resolvedFlag = resolveFlagResponse.getResolvedFlags(0);
-
-      if (resolvedFlag.getVariant().isEmpty()) {
-        log.debug(
-            String.format(
-                "The server returned no assignment for the flag '%s'. Typically, this happens "
-                    + "if no configured rules matches the given evaluation context.",
-                flagPath.getFlag()));
-        return ProviderEvaluation.<Value>builder()
-            .value(defaultValue)
-            .reason(
-                "The server returned no assignment for the flag. Typically, this happens "
-                    + "if no configured rules matches the given evaluation context.")
-            .build();
-      } else {
-        final Value fullValue =
-            OpenFeatureTypeMapper.from(resolvedFlag.getValue(), resolvedFlag.getFlagSchema());
-
-        // if a path is given, extract expected portion from the structured value
-        Value value = OpenFeatureUtils.getValueForPath(flagPath.getPath(), fullValue);
-
-        if (value.isNull()) {
-          value = defaultValue;
+      // while the remote API is unreachable, the last known resolve avoids a flickering experience
+      final Optional<ResolveFlagsResponse> lastKnownResolve =
+          resolveConfidence.lastKnownResolve(requestFlagName, true);
+      if (lastKnownResolve.isEmpty()) {
+        if (statusException != null) {
+          handleStatusRuntimeException(statusException);
         }
-
-        // regular resolve was successful
-        return ProviderEvaluation.<Value>builder()
-            .value(value)
-            .variant(resolvedFlag.getVariant())
-            .build();
+        throw new GeneralError("Unknown error occurred when calling the provider backend");
       }
-    } catch (StatusRuntimeException | InterruptedException | ExecutionException e) {
-      // If the remote API is unreachable, for now we fall back to the default value. However, we
-      // should consider maintaining a local resolve-history to avoid flickering experience in case
-      // of a temporarily unavailable backend
-      if (e instanceof StatusRuntimeException) {
-        handleStatusRuntimeException((StatusRuntimeException) e);
-      } else if (e.getCause() instanceof StatusRuntimeException) {
-        handleStatusRuntimeException((StatusRuntimeException) e.getCause());
+      log.debug(
+          "Serving the last known value of flag '{}' after a failed resolve: {}",
+          flagPath.getFlag(),
+          e.getMessage());
+      resolveFlagResponse = lastKnownResolve.get();
+      stale = true;
+      fromHistory = true;
+    }
+
+    if (resolveFlagResponse.getResolvedFlagsList().isEmpty()) {
+      log.warn("No active flag '{}' was found", flagPath.getFlag());
+      throw new FlagNotFoundError(
+          String.format("No active flag '%s' was found", flagPath.getFlag()));
+    }
+
+    final String responseFlagName = resolveFlagResponse.getResolvedFlags(0).getFlag();
+    if (!requestFlagName.equals(responseFlagName)) {
+      log.warn("Unexpected flag '{}' from remote", responseFlagName.replaceFirst("^flags/", ""));
+      throw new FlagNotFoundError(
+          String.format(
+              "Unexpected flag '%s' from remote", responseFlagName.replaceFirst("^flags/", "")));
+    }
+
+    final ResolvedFlag resolvedFlag = resolveFlagResponse.getResolvedFlags(0);
+    if (!fromHistory) {
+      confidence.applyFlag(resolvedFlag.getFlag(), resolveFlagResponse.getResolveToken());
+    }
+
+    if (resolvedFlag.getVariant().isEmpty()) {
+      log.debug(
+          String.format(
+              "The server returned no assignment for the flag '%s'. Typically, this happens "
+                  + "if no configured rules matches the given evaluation context.",
+              flagPath.getFlag()));
+      return ProviderEvaluation.<T>builder()
+          .value(defaultValue)
+          .reason(
+              "The server returned no assignment for the flag. Typically, this happens "
+                  + "if no configured rules matches the given evaluation context.")
+          .build();
+    } else {
+      // if a path is given, only the expected portion of the structured value is converted
+      T value =
+          OpenFeatureTypeMapper.from(
+              resolvedFlag.getValue(), resolvedFlag.getFlagSchema(), flagPath.getPath(), converter);
+
+      if (value == null) {
+        value = defaultValue;
       }
-      throw new GeneralError("Unknown error occurred when calling the provider backend");
+
+      // regular resolve was successful
+      return ProviderEvaluation.<T>builder()
+          .value(value)
+          .variant(resolvedFlag.getVariant())
+          .reason(stale ? Confidence.STALE_REASON : null)
+          .build();
     }
   }
 
@@ -245,4 +461,35 @@ public class ConfidenceFeatureProvider implements FeatureProvider {
               e.getMessage()));
     }
   }
+
+  /** Flags resolved for a static evaluation context, keyed by their resource name. */
+  private static final class Prefetch {
+    private final ConfidenceValue.Struct confidenceContext;
+    private final Struct evaluationContext;
+    private final Map<String, ResolveFlagsResponse> responses;
+
+    private Prefetch(
+        ConfidenceValue.Struct confidenceContext,
+        Struct evaluationContext,
+        Map<String, ResolveFlagsResponse> responses) {
+      this.confidenceContext = confidenceContext;
+      this.evaluationContext = evaluationContext;
+      this.responses = responses;
+    }
+
+    /** Returns the names of the flags that resolve differently, ignoring the resolve token. */
+    private List<String> flagsChangedSince(Prefetch previous) {
+      final List<String> flagsChanged = new ArrayList<>();
+      for (String flag : Sets.union(responses.keySet(), previous.responses.keySet())) {
+        final ResolveFlagsResponse current = responses.get(flag);
+        final ResolveFlagsResponse before = previous.responses.get(flag);
+        if (current == null
+            || before == null
+            || !current.getResolvedFlags(0).equals(before.getResolvedFlags(0))) {
+          flagsChanged.add(flag.replaceFirst("^flags/", ""));
+        }
+      }
+      return flagsChanged;
+    }
+  }
 }
@@ -3,6 +3,7 @@ package com.spotify.confidence;
 import com.google.protobuf.ListValue;
 import com.google.protobuf.NullValue;
 import com.google.protobuf.Struct;
+import com.google.protobuf.Value.KindCase;
 import com.spotify.confidence.shaded.flags.types.v1.FlagSchema;
 import com.spotify.confidence.shaded.flags.types.v1.FlagSchema.SchemaTypeCase;
 import com.spotify.confidence.shaded.flags.types.v1.FlagSchema.StructFlagSchema;
@@ -10,15 +11,128 @@ import dev.openfeature.sdk.MutableStructure;
 import dev.openfeature.sdk.Structure;
 import dev.openfeature.sdk.Value;
 import dev.openfeature.sdk.exceptions.ParseError;
+import dev.openfeature.sdk.exceptions.TypeMismatchError;
 import dev.openfeature.sdk.exceptions.ValueNotConvertableError;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
 
 // For now, only package visibility to keep control on this part of the code
 class OpenFeatureTypeMapper {
 
-  private static Value from(com.google.protobuf.Value value, FlagSchema schema) {
+  private static final Logger log = org.slf4j.LoggerFactory.getLogger(OpenFeatureTypeMapper.class);
+
+  /** Converts a non-null proto value with its schema to the type of an evaluation. */
+  @FunctionalInterface
+  interface ValueConverter<T> {
+    T convert(com.google.protobuf.Value value, FlagSchema schema);
+  }
+
+  static final ValueConverter<Value> VALUE = OpenFeatureTypeMapper::from;
+
+  // the typed converters map values that match the schema directly, and anything else through a
+  // Value, which converts between number types and reports mismatches
+  static final ValueConverter<Boolean> BOOLEAN =
+      (value, schema) ->
+          value.getKindCase() == KindCase.BOOL_VALUE
+                  && schema.getSchemaTypeCase() == SchemaTypeCase.BOOL_SCHEMA
+              ? value.getBoolValue()
+              : cast(value, schema, Value::asBoolean);
+
+  static final ValueConverter<String> STRING =
+      (value, schema) ->
+          value.getKindCase() == KindCase.STRING_VALUE
+                  && schema.getSchemaTypeCase() == SchemaTypeCase.STRING_SCHEMA
+              ? value.getStringValue()
+              : cast(value, schema, Value::asString);
+
+  static final ValueConverter<Integer> INTEGER =
+      (value, schema) ->
+          value.getKindCase() == KindCase.NUMBER_VALUE
+                  && schema.getSchemaTypeCase() == SchemaTypeCase.INT_SCHEMA
+                  && (int) value.getNumberValue() == value.getNumberValue()
+              ? (int) value.getNumberValue()
+              : cast(value, schema, Value::asInteger);
+
+  static final ValueConverter<Double> DOUBLE =
+      (value, schema) ->
+          value.getKindCase() == KindCase.NUMBER_VALUE
+                  && schema.getSchemaTypeCase() == SchemaTypeCase.DOUBLE_SCHEMA
+              ? value.getNumberValue()
+              : cast(value, schema, Value::asDouble);
+
+  private static <T> T cast(
+      com.google.protobuf.Value value, FlagSchema schema, Function<Value, T> cast) {
+    final Value mapped = from(value, schema);
+    final T castedValue = cast.apply(mapped);
+    if (castedValue == null) {
+      log.warn("Cannot cast value '{}' to expected type", mapped);
+      throw new TypeMismatchError(String.format("Cannot cast value '%s' to expected type", mapped));
+    }
+    return castedValue;
+  }
+
+  /**
+   * Converts the value of a flag at a path, decoding only the fields along the path.
+   *
+   * @return the converted value, or null if the value at the path is null
+   * @throws TypeMismatchError if the path doesn't exist in the flag value
+   */
+  @Nullable
+  static <T> T from(
+      Struct struct, StructFlagSchema schema, List<String> path, ValueConverter<T> converter) {
+    if (path.isEmpty()) {
+      return converter.convert(
+          com.google.protobuf.Value.newBuilder().setStructValue(struct).build(),
+          FlagSchema.newBuilder().setStructSchema(schema).build());
+    }
+    Struct structValue = struct;
+    StructFlagSchema structSchema = schema;
+    for (int i = 0; ; i++) {
+      final String fieldName = path.get(i);
+      final com.google.protobuf.Value fieldValue = structValue.getFieldsMap().get(fieldName);
+      if (fieldValue == null) {
+        final Structure structure = from(structValue, structSchema).asStructure();
+        log.warn(
+            "Illegal attempt to derive non-existing field '{}' on structure value '{}'",
+            fieldName,
+            structure);
+        throw new TypeMismatchError(
+            String.format(
+                "Illegal attempt to derive non-existing field '%s' on structure value '%s'",
+                fieldName, structure));
+      }
+      final FlagSchema fieldSchema = structSchema.getSchemaMap().get(fieldName);
+      if (fieldSchema == null) {
+        throw new ParseError(String.format("Lacking schema for field '%s'", fieldName));
+      }
+      if (i == path.size() - 1) {
+        return fieldValue.getKindCase() == KindCase.NULL_VALUE
+            ? null
+            : converter.convert(fieldValue, fieldSchema);
+      }
+      if (fieldValue.getKindCase() != KindCase.STRUCT_VALUE
+          || fieldSchema.getSchemaTypeCase() != SchemaTypeCase.STRUCT_SCHEMA) {
+        // decoding fails on a schema mismatch, otherwise the value isn't a structure
+        final Value value = from(fieldValue, fieldSchema);
+        log.warn(
+            "Illegal attempt to derive field '{}' on non-structure value '{}'",
+            path.get(i + 1),
+            value);
+        throw new TypeMismatchError(
+            String.format(
+                "Illegal attempt to derive field '%s' on non-structure value '%s'",
+                path.get(i + 1), value));
+      }
+      structValue = fieldValue.getStructValue();
+      structSchema = fieldSchema.getStructSchema();
+    }
+  }
+
+  static Value from(com.google.protobuf.Value value, FlagSchema schema) {
     if (schema.getSchemaTypeCase() == SchemaTypeCase.SCHEMATYPE_NOT_SET) {
       throw new ParseError("schemaType not set in FlagSchema");
     }
@@ -3,10 +3,12 @@ package com.spotify.confidence;
 import static com.spotify.confidence.ResolverClientTestUtils.generateSampleResponse;
 import static dev.openfeature.sdk.ErrorCode.GENERAL;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.util.Structs;
 import com.google.protobuf.util.Values;
 import com.spotify.confidence.ResolverClientTestUtils.ValueSchemaHolder;
@@ -23,9 +25,16 @@ import io.grpc.inprocess.InProcessChannelBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.stub.StreamObserver;
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -40,6 +49,7 @@ final class FeatureProviderTest {
       mock(FlagResolverServiceImplBase.class);
   private static Client client;
   private static OpenFeatureAPI openFeatureAPI;
+  private final List<String> appliedFlags = new CopyOnWriteArrayList<>();
 
   private static final EvaluationContext SAMPLE_CONTEXT_WITHOUT_TARGETING_KEY =
       new MutableContext(Map.of("my-key", new Value(true)));
@@ -75,6 +85,7 @@ final class FeatureProviderTest {
     final FeatureProvider featureProvider = new ConfidenceFeatureProvider(confidence);
 
     openFeatureAPI = OpenFeatureAPI.getInstance();
+    openFeatureAPI.setEvaluationContext(new ImmutableContext());
     openFeatureAPI.setProvider(featureProvider);
 
     client = openFeatureAPI.getClient();
@@ -146,6 +157,197 @@ final class FeatureProviderTest {
     assertThat(evaluationDetails.getVariant()).isBlank();
   }
 
+  @Test
+  public void lastKnownResolveIsServedWhenApiIsUnavailable() {
+    final Confidence confidence =
+        Confidence.create(
+            new FakeEventSenderEngine(new FakeClock()),
+            new FlagResolverClientImpl(
+                deferredApplyFlagResolver(),
+                null,
+                recordingFlagApplier(),
+                new ResolveHistory(10, Duration.ofMinutes(1), Instant::now)));
+    openFeatureAPI.setProvider(new ConfidenceFeatureProvider(confidence));
+    mockSampleResponse();
+    assertThat(client.getIntegerValue("flag.prop-E", 1000, SAMPLE_CONTEXT)).isEqualTo(50);
+    assertThat(appliedFlags).containsExactly("flags/flag");
+
+    mockResolve(
+        (request, streamObserver) -> streamObserver.onError(Status.UNAVAILABLE.asException()));
+
+    final FlagEvaluationDetails<Integer> evaluationDetails =
+        client.getIntegerDetails("flag.prop-E", 1000, SAMPLE_CONTEXT);
+    assertThat(evaluationDetails.getValue()).isEqualTo(50);
+    assertThat(evaluationDetails.getVariant()).isEqualTo("flags/flag/variants/var-A");
+    assertThat(evaluationDetails.getReason()).isEqualTo(Confidence.STALE_REASON);
+    assertThat(evaluationDetails.getErrorCode()).isNull();
+    // the resolve token of a stale resolve isn't applied again
+    assertThat(appliedFlags).containsExactly("flags/flag");
+
+    final FlagEvaluationDetails<Integer> otherContextDetails =
+        client.getIntegerDetails("flag.prop-E", 1000, SAMPLE_CONTEXT_WITHOUT_TARGETING_KEY);
+    assertThat(otherContextDetails.getValue()).isEqualTo(1000);
+    assertThat(otherContextDetails.getErrorCode()).isEqualTo(GENERAL);
+  }
+
+  @Test
+  public void prefetchingRequiresDeferredApply() {
+    final Confidence confidence =
+        Confidence.create(
+            new FakeEventSenderEngine(new FakeClock()),
+            new FlagResolverClientImpl(new GrpcFlagResolver("fake-secret", channel)));
+
+    assertThatThrownBy(
+            () -> new ConfidenceFeatureProvider(confidence, List.of("flag"), Duration.ofHours(1)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void prefetchedFlagsAreAppliedWhenEvaluated() {
+    final ConfidenceFeatureProvider provider = prefetchingProvider();
+    final List<Boolean> applyInRequests = new CopyOnWriteArrayList<>();
+    openFeatureAPI.setEvaluationContext(SAMPLE_CONTEXT);
+    mockResolve(
+        (request, streamObserver) -> {
+          applyInRequests.add(request.getApply());
+          streamObserver.onNext(generateSampleResponse(Collections.emptyList()));
+          streamObserver.onCompleted();
+        });
+    openFeatureAPI.setProviderAndWait(provider);
+    assertThat(applyInRequests).containsExactly(false);
+    assertThat(appliedFlags).isEmpty();
+
+    assertThat(client.getIntegerValue("flag.prop-E", 1000)).isEqualTo(50);
+    assertThat(applyInRequests).hasSize(1);
+    assertThat(appliedFlags).containsExactly("flags/flag");
+  }
+
+  @Test
+  public void prefetchedFlagsAreServedFromMemory() {
+    final ConfidenceFeatureProvider provider = prefetchingProvider();
+    openFeatureAPI.setEvaluationContext(SAMPLE_CONTEXT);
+    mockSampleResponse();
+    openFeatureAPI.setProviderAndWait(provider);
+    assertThat(provider.getState()).isEqualTo(ProviderState.READY);
+
+    mockResolve(
+        (request, streamObserver) -> streamObserver.onError(Status.UNAVAILABLE.asException()));
+
+    final FlagEvaluationDetails<Integer> evaluationDetails =
+        client.getIntegerDetails("flag.prop-E", 1000);
+    assertThat(evaluationDetails.getValue()).isEqualTo(50);
+    assertThat(evaluationDetails.getVariant()).isEqualTo("flags/flag/variants/var-A");
+    assertThat(evaluationDetails.getReason()).isNotEqualTo(Confidence.STALE_REASON);
+
+    final FlagEvaluationDetails<Integer> otherContextDetails =
+        client.getIntegerDetails("flag.prop-E", 1000, new MutableContext("other-targeting-key"));
+    assertThat(otherContextDetails.getValue()).isEqualTo(1000);
+    assertThat(otherContextDetails.getErrorCode()).isEqualTo(GENERAL);
+  }
+
+  @Test
+  public void refreshEmitsStaleReadyAndConfigurationChanged() throws InterruptedException {
+    final ConfidenceFeatureProvider provider = prefetchingProvider();
+    openFeatureAPI.setEvaluationContext(SAMPLE_CONTEXT);
+    mockSampleResponse();
+    openFeatureAPI.setProviderAndWait(provider);
+
+    final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    client.onProviderStale(details -> events.add("STALE"));
+    client.onProviderConfigurationChanged(
+        details -> events.add("CHANGED " + details.getFlagsChanged()));
+    // a ready handler runs right away when the provider is already ready
+    client.onProviderReady(details -> events.add("READY"));
+    assertThat(events.poll(1, TimeUnit.SECONDS)).isEqualTo("READY");
+
+    mockResolve(
+        (request, streamObserver) -> streamObserver.onError(Status.UNAVAILABLE.asException()));
+    provider.refresh();
+    assertThat(events.poll(1, TimeUnit.SECONDS)).isEqualTo("STALE");
+    final FlagEvaluationDetails<Integer> staleDetails =
+        client.getIntegerDetails("flag.prop-E", 1000);
+    assertThat(staleDetails.getValue()).isEqualTo(50);
+    assertThat(staleDetails.getReason()).isEqualTo(Confidence.STALE_REASON);
+
+    mockSampleResponse(
+        List.of(
+            new ValueSchemaHolder(
+                "prop-X", Values.of(true), FlagSchema.SchemaTypeCase.BOOL_SCHEMA)));
+    provider.refresh();
+    assertThat(events.poll(1, TimeUnit.SECONDS)).isEqualTo("READY");
+    assertThat(events.poll(1, TimeUnit.SECONDS)).isEqualTo("CHANGED [flag]");
+    assertThat(client.getBooleanValue("flag.prop-X", false)).isTrue();
+
+    provider.refresh();
+    assertThat(events.poll(100, TimeUnit.MILLISECONDS)).isNull();
+  }
+
+  @Test
+  public void shutdownDoesNotWaitForABlockedRefresh() throws InterruptedException {
+    final ConfidenceFeatureProvider provider = prefetchingProvider();
+    openFeatureAPI.setEvaluationContext(SAMPLE_CONTEXT);
+    mockSampleResponse();
+    openFeatureAPI.setProviderAndWait(provider);
+
+    final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    client.onProviderStale(details -> events.add("STALE"));
+    client.onProviderConfigurationChanged(details -> events.add("CHANGED"));
+    final CountDownLatch resolveStarted = new CountDownLatch(1);
+    final CountDownLatch releaseResolve = new CountDownLatch(1);
+    mockResolve(
+        (request, streamObserver) -> {
+          resolveStarted.countDown();
+          try {
+            releaseResolve.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          streamObserver.onNext(
+              generateSampleResponse(
+                  List.of(
+                      new ValueSchemaHolder(
+                          "prop-X", Values.of(true), FlagSchema.SchemaTypeCase.BOOL_SCHEMA))));
+          streamObserver.onCompleted();
+        });
+    final Thread refresh = new Thread(provider::refresh);
+    refresh.start();
+    assertThat(resolveStarted.await(1, TimeUnit.SECONDS)).isTrue();
+
+    final Thread shutdown = new Thread(provider::shutdown);
+    shutdown.start();
+    shutdown.join(1000);
+    assertThat(shutdown.isAlive()).isFalse();
+    assertThat(provider.getState()).isEqualTo(ProviderState.NOT_READY);
+
+    // the refresh completes after the shutdown, and its result is discarded
+    releaseResolve.countDown();
+    refresh.join(1000);
+    assertThat(refresh.isAlive()).isFalse();
+    assertThat(provider.getState()).isEqualTo(ProviderState.NOT_READY);
+    assertThat(events.poll(100, TimeUnit.MILLISECONDS)).isNull();
+  }
+
+  @Test
+  public void failedPrefetchIsAnErrorUntilRefreshSucceeds() throws InterruptedException {
+    final ConfidenceFeatureProvider provider = prefetchingProvider();
+    openFeatureAPI.setEvaluationContext(SAMPLE_CONTEXT);
+    mockResolve(
+        (request, streamObserver) -> streamObserver.onError(Status.UNAVAILABLE.asException()));
+    openFeatureAPI.setProviderAndWait(provider);
+    assertThat(provider.getState()).isEqualTo(ProviderState.ERROR);
+
+    final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    client.onProviderReady(details -> events.add("READY"));
+    mockSampleResponse();
+    provider.refresh();
+    assertThat(events.poll(1, TimeUnit.SECONDS)).isEqualTo("READY");
+    assertThat(provider.getState()).isEqualTo(ProviderState.READY);
+    assertThat(client.getIntegerValue("flag.prop-E", 1000)).isEqualTo(50);
+
+    provider.shutdown();
+    assertThat(provider.getState()).isEqualTo(ProviderState.NOT_READY);
+  }
+
   @Test
   public void unauthenticated() {
 
@@ -526,6 +728,41 @@ final class FeatureProviderTest {
         .resolveFlags(any(), any());
   }
 
+  private ConfidenceFeatureProvider prefetchingProvider() {
+    final Confidence confidence =
+        Confidence.create(
+            new FakeEventSenderEngine(new FakeClock()),
+            new FlagResolverClientImpl(deferredApplyFlagResolver(), null, recordingFlagApplier()));
+    return new ConfidenceFeatureProvider(confidence, List.of("flag"), Duration.ofHours(1));
+  }
+
+  /** Resolves with {@code apply=false}, for clients that apply with {@link #appliedFlags}. */
+  private GrpcFlagResolver deferredApplyFlagResolver() {
+    return new GrpcFlagResolver(
+        "fake-secret",
+        channel,
+        false,
+        GrpcFlagResolver.DEFAULT_RESOLVE_DEADLINE,
+        MoreExecutors.directExecutor(),
+        ConfidenceMetrics.NOOP);
+  }
+
+  /** Records the applied flags in {@link #appliedFlags}. */
+  private FlagApplier recordingFlagApplier() {
+    return new FlagApplier() {
+      @Override
+      public void apply(String flag, com.google.protobuf.ByteString resolveToken) {
+        appliedFlags.add(flag);
+      }
+
+      @Override
+      public void flush() {}
+
+      @Override
+      public void close() {}
+    };
+  }
+
   private void mockSampleResponse() {
     mockSampleResponse(Collections.emptyList());
   }
@@ -3,11 +3,20 @@ package com.spotify.confidence;
 import static org.junit.jupiter.api.Assertions.*;
 
 import com.google.protobuf.util.Values;
+import com.spotify.confidence.shaded.flags.types.v1.FlagSchema;
+import com.spotify.confidence.shaded.flags.types.v1.FlagSchema.BoolFlagSchema;
+import com.spotify.confidence.shaded.flags.types.v1.FlagSchema.DoubleFlagSchema;
+import com.spotify.confidence.shaded.flags.types.v1.FlagSchema.IntFlagSchema;
+import com.spotify.confidence.shaded.flags.types.v1.FlagSchema.StringFlagSchema;
+import com.spotify.confidence.shaded.flags.types.v1.FlagSchema.StructFlagSchema;
 import dev.openfeature.sdk.MutableStructure;
 import dev.openfeature.sdk.Value;
+import dev.openfeature.sdk.exceptions.ParseError;
+import dev.openfeature.sdk.exceptions.TypeMismatchError;
 import dev.openfeature.sdk.exceptions.ValueNotConvertableError;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.Test;
 
@@ -105,4 +114,91 @@ class OpenFeatureConfidenceTypeMapperTest {
     // Check the result
     assertEquals(Values.of("value"), protoValue.getStructValue().getFieldsMap().get("field"));
   }
+
+  private static final com.google.protobuf.Struct FLAG_VALUE =
+      com.google.protobuf.Struct.newBuilder()
+          .putFields("enabled", Values.of(true))
+          .putFields("limit", Values.of(3))
+          .putFields("ratio", Values.of(0.5))
+          .putFields("title", Values.ofNull())
+          .putFields("unknown", Values.of("no schema"))
+          .build();
+
+  private static final StructFlagSchema FLAG_SCHEMA =
+      StructFlagSchema.newBuilder()
+          .putSchema(
+              "enabled",
+              FlagSchema.newBuilder().setBoolSchema(BoolFlagSchema.getDefaultInstance()).build())
+          .putSchema(
+              "limit",
+              FlagSchema.newBuilder().setIntSchema(IntFlagSchema.getDefaultInstance()).build())
+          .putSchema(
+              "ratio",
+              FlagSchema.newBuilder()
+                  .setDoubleSchema(DoubleFlagSchema.getDefaultInstance())
+                  .build())
+          .putSchema(
+              "title",
+              FlagSchema.newBuilder()
+                  .setStringSchema(StringFlagSchema.getDefaultInstance())
+                  .build())
+          .build();
+
+  @Test
+  public void testTypedValuesAtPath() {
+    assertEquals(
+        true,
+        OpenFeatureTypeMapper.from(
+            FLAG_VALUE, FLAG_SCHEMA, List.of("enabled"), OpenFeatureTypeMapper.BOOLEAN));
+    assertEquals(
+        3,
+        OpenFeatureTypeMapper.from(
+            FLAG_VALUE, FLAG_SCHEMA, List.of("limit"), OpenFeatureTypeMapper.INTEGER));
+    assertEquals(
+        0.5,
+        OpenFeatureTypeMapper.from(
+            FLAG_VALUE, FLAG_SCHEMA, List.of("ratio"), OpenFeatureTypeMapper.DOUBLE));
+    assertNull(
+        OpenFeatureTypeMapper.from(
+            FLAG_VALUE, FLAG_SCHEMA, List.of("title"), OpenFeatureTypeMapper.STRING));
+  }
+
+  @Test
+  public void testTypedValuesConvertBetweenNumbers() {
+    assertEquals(
+        3.0,
+        OpenFeatureTypeMapper.from(
+            FLAG_VALUE, FLAG_SCHEMA, List.of("limit"), OpenFeatureTypeMapper.DOUBLE));
+    assertEquals(
+        0,
+        OpenFeatureTypeMapper.from(
+            FLAG_VALUE, FLAG_SCHEMA, List.of("ratio"), OpenFeatureTypeMapper.INTEGER));
+  }
+
+  @Test
+  public void testTypedValueWithWrongType() {
+    final TypeMismatchError error =
+        assertThrows(
+            TypeMismatchError.class,
+            () ->
+                OpenFeatureTypeMapper.from(
+                    FLAG_VALUE, FLAG_SCHEMA, List.of("limit"), OpenFeatureTypeMapper.BOOLEAN));
+    assertEquals(
+        String.format("Cannot cast value '%s' to expected type", new Value(3)), error.getMessage());
+  }
+
+  @Test
+  public void testOnlyFieldsAlongThePathAreDecoded() {
+    assertEquals(
+        true,
+        OpenFeatureTypeMapper.from(
+            FLAG_VALUE, FLAG_SCHEMA, List.of("enabled"), OpenFeatureTypeMapper.BOOLEAN));
+    final ParseError error =
+        assertThrows(
+            ParseError.class,
+            () ->
+                OpenFeatureTypeMapper.from(
+                    FLAG_VALUE, FLAG_SCHEMA, List.of(), OpenFeatureTypeMapper.VALUE));
+    assertEquals("Lacking schema for field 'unknown'", error.getMessage());
+  }
 }
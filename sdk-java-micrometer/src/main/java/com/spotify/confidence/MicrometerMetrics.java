@@ -0,0 +1,147 @@
+package com.spotify.confidence;
+
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Reports the metrics of the SDK to a Micrometer {@link MeterRegistry}:
+ *
+ * <ul>
+ *   <li>{@code confidence.resolve.duration}: timer of resolve requests, tagged with their gRPC
+ *       {@code status}
+ *   <li>{@code confidence.resolve.cache.lookups}: counter of resolve cache lookups, tagged with
+ *       their {@code result}, {@code hit} or {@code miss}
+ *   <li>{@code confidence.events.upload.duration}: timer of event upload requests, tagged with
+ *       their gRPC {@code status}
+ *   <li>{@code confidence.events.uploaded}: counter of events in upload requests, tagged with the
+ *       gRPC {@code status} of the request
+ *   <li>{@code confidence.events.dropped}: counter of dropped events
+ *   <li>{@code confidence.events.pending}: gauge of events that are queued or being uploaded,
+ *       tagged with the {@code queue} of the client
+ *   <li>{@code confidence.events.memory}: gauge of the estimated memory held by pending events,
+ *       tagged with the {@code queue} of the client
+ * </ul>
+ *
+ * <pre>{@code
+ * final Confidence confidence =
+ *     Confidence.builder("<CLIENT_TOKEN>").metrics(new MicrometerMetrics(registry)).build();
+ * }</pre>
+ */
+public final class MicrometerMetrics implements ConfidenceMetrics {
+
+  // shared by all instances, so that clients reporting to the same registry get distinct queues
+  private static final AtomicInteger eventQueues = new AtomicInteger();
+
+  private final MeterRegistry registry;
+  private final Counter cacheHits;
+  private final Counter cacheMisses;
+  private final Counter eventsDropped;
+  // meters tagged with a status are registered on first use, and looked up once per status after
+  private final Map<Status.Code, Timer> resolveDurations = new ConcurrentHashMap<>();
+  private final Map<Status.Code, Timer> eventUploadDurations = new ConcurrentHashMap<>();
+  private final Map<Status.Code, Counter> eventsUploaded = new ConcurrentHashMap<>();
+
+  /**
+   * Creates metrics that register their meters in the given registry.
+   *
+   * @param registry the registry to report to
+   */
+  public MicrometerMetrics(MeterRegistry registry) {
+    this.registry = registry;
+    this.cacheHits = cacheLookups("hit");
+    this.cacheMisses = cacheLookups("miss");
+    this.eventsDropped =
+        Counter.builder("confidence.events.dropped")
+            .description("Events that were dropped without being uploaded")
+            .register(registry);
+  }
+
+  @Override
+  public void resolveCompleted(Duration latency, Status.Code status) {
+    resolveDurations
+        .computeIfAbsent(
+            status,
+            code ->
+                Timer.builder("confidence.resolve.duration")
+                    .description("Latency of resolve requests to the backend")
+                    .tag("status", code.name())
+                    .register(registry))
+        .record(latency);
+  }
+
+  @Override
+  public void resolveCacheLookup(boolean hit) {
+    (hit ? cacheHits : cacheMisses).increment();
+  }
+
+  @Override
+  public void eventUploadCompleted(int events, Duration latency, Status.Code status) {
+    eventUploadDurations
+        .computeIfAbsent(
+            status,
+            code ->
+                Timer.builder("confidence.events.upload.duration")
+                    .description("Latency of requests that upload events to the backend")
+                    .tag("status", code.name())
+                    .register(registry))
+        .record(latency);
+    eventsUploaded
+        .computeIfAbsent(
+            status,
+            code ->
+                Counter.builder("confidence.events.uploaded")
+                    .description("Events in upload requests to the backend")
+                    .tag("status", code.name())
+                    .register(registry))
+        .increment(events);
+  }
+
+  @Override
+  public void eventsDropped(int events) {
+    eventsDropped.increment(events);
+  }
+
+  /**
+   * Registers the gauges of the event queue, which are removed from the registry when the
+   * registration is closed. Each registration is tagged with its own {@code queue}, so that the
+   * event queues of several clients reporting to the same registry are reported side by side.
+   */
+  @Override
+  public Registration registerEventQueue(
+      LongSupplier pendingEvents, LongSupplier estimatedMemoryBytes) {
+    final String queue = Integer.toString(eventQueues.incrementAndGet());
+    final Gauge pending =
+        Gauge.builder("confidence.events.pending", pendingEvents, LongSupplier::getAsLong)
+            .description("Events that are queued or being uploaded")
+            .tag("queue", queue)
+            .strongReference(true)
+            .register(registry);
+    final Gauge memory =
+        Gauge.builder("confidence.events.memory", estimatedMemoryBytes, LongSupplier::getAsLong)
+            .description("Estimated memory held by pending events")
+            .baseUnit(BaseUnits.BYTES)
+            .tag("queue", queue)
+            .strongReference(true)
+            .register(registry);
+    return () -> {
+      registry.remove(pending);
+      registry.remove(memory);
+    };
+  }
+
+  private Counter cacheLookups(String result) {
+    return Counter.builder("confidence.resolve.cache.lookups")
+        .description("Lookups of resolves in the resolve cache")
+        .tag("result", result)
+        .register(registry);
+  }
+}
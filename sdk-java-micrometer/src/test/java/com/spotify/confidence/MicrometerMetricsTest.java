@@ -0,0 +1,120 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.grpc.Status;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class MicrometerMetricsTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final MicrometerMetrics metrics = new MicrometerMetrics(registry);
+
+  @Test
+  void resolvesAreTimedPerStatus() {
+    metrics.resolveCompleted(Duration.ofMillis(20), Status.Code.OK);
+    metrics.resolveCompleted(Duration.ofMillis(40), Status.Code.OK);
+    metrics.resolveCompleted(Duration.ofSeconds(10), Status.Code.DEADLINE_EXCEEDED);
+
+    assertThat(registry.get("confidence.resolve.duration").tag("status", "OK").timer().count())
+        .isEqualTo(2);
+    assertThat(
+            registry
+                .get("confidence.resolve.duration")
+                .tag("status", "OK")
+                .timer()
+                .totalTime(TimeUnit.MILLISECONDS))
+        .isEqualTo(60);
+    assertThat(
+            registry
+                .get("confidence.resolve.duration")
+                .tag("status", "DEADLINE_EXCEEDED")
+                .timer()
+                .count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  void cacheLookupsAreCountedPerResult() {
+    metrics.resolveCacheLookup(true);
+    metrics.resolveCacheLookup(true);
+    metrics.resolveCacheLookup(false);
+
+    assertThat(
+            registry.get("confidence.resolve.cache.lookups").tag("result", "hit").counter().count())
+        .isEqualTo(2);
+    assertThat(
+            registry
+                .get("confidence.resolve.cache.lookups")
+                .tag("result", "miss")
+                .counter()
+                .count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  void eventUploadsAndDroppedEventsAreCounted() {
+    metrics.eventUploadCompleted(25, Duration.ofMillis(5), Status.Code.OK);
+    metrics.eventUploadCompleted(10, Duration.ofMillis(5), Status.Code.UNAVAILABLE);
+    metrics.eventsDropped(3);
+
+    assertThat(
+            registry.get("confidence.events.upload.duration").tag("status", "OK").timer().count())
+        .isEqualTo(1);
+    assertThat(registry.get("confidence.events.uploaded").tag("status", "OK").counter().count())
+        .isEqualTo(25);
+    assertThat(
+            registry
+                .get("confidence.events.uploaded")
+                .tag("status", "UNAVAILABLE")
+                .counter()
+                .count())
+        .isEqualTo(10);
+    assertThat(registry.get("confidence.events.dropped").counter().count()).isEqualTo(3);
+  }
+
+  @Test
+  void eventQueueIsReportedAsGauges() {
+    final AtomicLong pending = new AtomicLong(7);
+    metrics.registerEventQueue(pending::get, () -> 1024);
+
+    assertThat(registry.get("confidence.events.pending").gauge().value()).isEqualTo(7);
+    pending.set(3);
+    assertThat(registry.get("confidence.events.pending").gauge().value()).isEqualTo(3);
+    assertThat(registry.get("confidence.events.memory").gauge().value()).isEqualTo(1024);
+  }
+
+  @Test
+  void closedEventQueueIsNoLongerReported() {
+    metrics.registerEventQueue(() -> 7, () -> 1024).close();
+    assertThat(registry.find("confidence.events.pending").gauge()).isNull();
+    assertThat(registry.find("confidence.events.memory").gauge()).isNull();
+  }
+
+  @Test
+  void eventQueuesOfClientsSharingARegistryAreReportedSeparately() {
+    final ConfidenceMetrics.Registration first = metrics.registerEventQueue(() -> 7, () -> 1024);
+    final ConfidenceMetrics.Registration second =
+        new MicrometerMetrics(registry).registerEventQueue(() -> 3, () -> 512);
+    assertThat(registry.get("confidence.events.pending").gauges())
+        .extracting(Gauge::value)
+        .containsExactlyInAnyOrder(7.0, 3.0);
+
+    // closing the second client keeps reporting the first one
+    second.close();
+    assertThat(registry.get("confidence.events.pending").gauges())
+        .extracting(Gauge::value)
+        .containsExactly(7.0);
+    assertThat(registry.get("confidence.events.memory").gauges())
+        .extracting(Gauge::value)
+        .containsExactly(1024.0);
+
+    first.close();
+    assertThat(registry.find("confidence.events.pending").gauge()).isNull();
+  }
+}
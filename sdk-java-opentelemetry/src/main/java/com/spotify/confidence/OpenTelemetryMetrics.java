@@ -0,0 +1,153 @@
+package com.spotify.confidence;
+
+import io.grpc.Status;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableLongGauge;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Reports the metrics of the SDK to OpenTelemetry, with the instrumentation scope {@value
+ * #INSTRUMENTATION_SCOPE}:
+ *
+ * <ul>
+ *   <li>{@code confidence.resolve.duration}: histogram of resolve request latencies in seconds,
+ *       with their gRPC {@code status}
+ *   <li>{@code confidence.resolve.cache.lookups}: counter of resolve cache lookups, with their
+ *       {@code result}, {@code hit} or {@code miss}
+ *   <li>{@code confidence.events.upload.duration}: histogram of event upload request latencies in
+ *       seconds, with their gRPC {@code status}
+ *   <li>{@code confidence.events.uploaded}: counter of events in upload requests, with the gRPC
+ *       {@code status} of the request
+ *   <li>{@code confidence.events.dropped}: counter of dropped events
+ *   <li>{@code confidence.events.pending}: gauge of events that are queued or being uploaded
+ *   <li>{@code confidence.events.memory}: gauge of the estimated memory held by pending events
+ * </ul>
+ *
+ * <pre>{@code
+ * final Confidence confidence =
+ *     Confidence.builder("<CLIENT_TOKEN>").metrics(new OpenTelemetryMetrics(openTelemetry)).build();
+ * }</pre>
+ */
+public final class OpenTelemetryMetrics implements ConfidenceMetrics {
+
+  static final String INSTRUMENTATION_SCOPE = "com.spotify.confidence";
+  private static final AttributeKey<String> STATUS = AttributeKey.stringKey("status");
+  private static final AttributeKey<String> RESULT = AttributeKey.stringKey("result");
+  private static final Attributes HIT = Attributes.of(RESULT, "hit");
+  private static final Attributes MISS = Attributes.of(RESULT, "miss");
+  private static final Map<Status.Code, Attributes> STATUS_ATTRIBUTES =
+      new EnumMap<>(Status.Code.class);
+
+  static {
+    for (Status.Code code : Status.Code.values()) {
+      STATUS_ATTRIBUTES.put(code, Attributes.of(STATUS, code.name()));
+    }
+  }
+
+  private final Meter meter;
+  private final DoubleHistogram resolveDuration;
+  private final LongCounter resolveCacheLookups;
+  private final DoubleHistogram eventUploadDuration;
+  private final LongCounter eventsUploaded;
+  private final LongCounter eventsDropped;
+
+  /**
+   * Creates metrics that report to a meter of the given OpenTelemetry instance.
+   *
+   * @param openTelemetry the OpenTelemetry instance to get the meter from
+   */
+  public OpenTelemetryMetrics(OpenTelemetry openTelemetry) {
+    this(openTelemetry.getMeter(INSTRUMENTATION_SCOPE));
+  }
+
+  /**
+   * Creates metrics that report to the given meter.
+   *
+   * @param meter the meter to create the instruments with
+   */
+  public OpenTelemetryMetrics(Meter meter) {
+    this.meter = meter;
+    this.resolveDuration =
+        meter
+            .histogramBuilder("confidence.resolve.duration")
+            .setDescription("Latency of resolve requests to the backend")
+            .setUnit("s")
+            .build();
+    this.resolveCacheLookups =
+        meter
+            .counterBuilder("confidence.resolve.cache.lookups")
+            .setDescription("Lookups of resolves in the resolve cache")
+            .build();
+    this.eventUploadDuration =
+        meter
+            .histogramBuilder("confidence.events.upload.duration")
+            .setDescription("Latency of requests that upload events to the backend")
+            .setUnit("s")
+            .build();
+    this.eventsUploaded =
+        meter
+            .counterBuilder("confidence.events.uploaded")
+            .setDescription("Events in upload requests to the backend")
+            .build();
+    this.eventsDropped =
+        meter
+            .counterBuilder("confidence.events.dropped")
+            .setDescription("Events that were dropped without being uploaded")
+            .build();
+  }
+
+  @Override
+  public void resolveCompleted(Duration latency, Status.Code status) {
+    resolveDuration.record(seconds(latency), STATUS_ATTRIBUTES.get(status));
+  }
+
+  @Override
+  public void resolveCacheLookup(boolean hit) {
+    resolveCacheLookups.add(1, hit ? HIT : MISS);
+  }
+
+  @Override
+  public void eventUploadCompleted(int events, Duration latency, Status.Code status) {
+    eventUploadDuration.record(seconds(latency), STATUS_ATTRIBUTES.get(status));
+    eventsUploaded.add(events, STATUS_ATTRIBUTES.get(status));
+  }
+
+  @Override
+  public void eventsDropped(int events) {
+    eventsDropped.add(events);
+  }
+
+  @Override
+  public Registration registerEventQueue(
+      LongSupplier pendingEvents, LongSupplier estimatedMemoryBytes) {
+    final ObservableLongGauge pending =
+        meter
+            .gaugeBuilder("confidence.events.pending")
+            .setDescription("Events that are queued or being uploaded")
+            .ofLongs()
+            .buildWithCallback(measurement -> measurement.record(pendingEvents.getAsLong()));
+    final ObservableLongGauge memory =
+        meter
+            .gaugeBuilder("confidence.events.memory")
+            .setDescription("Estimated memory held by pending events")
+            .setUnit("By")
+            .ofLongs()
+            .buildWithCallback(measurement -> measurement.record(estimatedMemoryBytes.getAsLong()));
+    return () -> {
+      pending.close();
+      memory.close();
+    };
+  }
+
+  private static double seconds(Duration duration) {
+    return duration.toNanos() / 1e9;
+  }
+}
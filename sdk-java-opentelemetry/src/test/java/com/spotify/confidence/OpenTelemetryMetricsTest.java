@@ -0,0 +1,131 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.grpc.Status;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.LongPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class OpenTelemetryMetricsTest {
+
+  private final InMemoryMetricReader reader = InMemoryMetricReader.create();
+  private final OpenTelemetryMetrics metrics =
+      new OpenTelemetryMetrics(
+          OpenTelemetrySdk.builder()
+              .setMeterProvider(SdkMeterProvider.builder().registerMetricReader(reader).build())
+              .build());
+
+  @Test
+  void resolvesAreRecordedPerStatus() {
+    metrics.resolveCompleted(Duration.ofMillis(20), Status.Code.OK);
+    metrics.resolveCompleted(Duration.ofMillis(40), Status.Code.OK);
+    metrics.resolveCompleted(Duration.ofSeconds(10), Status.Code.DEADLINE_EXCEEDED);
+
+    final MetricData resolveDuration =
+        metric(reader.collectAllMetrics(), "confidence.resolve.duration");
+    assertThat(resolveDuration.getInstrumentationScopeInfo().getName())
+        .isEqualTo(OpenTelemetryMetrics.INSTRUMENTATION_SCOPE);
+    assertThat(resolveDuration.getUnit()).isEqualTo("s");
+    final HistogramPointData ok = histogramPoint(resolveDuration, status("OK"));
+    assertThat(ok.getCount()).isEqualTo(2);
+    assertThat(ok.getSum()).isCloseTo(0.06, org.assertj.core.data.Offset.offset(1e-9));
+    assertThat(histogramPoint(resolveDuration, status("DEADLINE_EXCEEDED")).getSum())
+        .isEqualTo(10.0);
+  }
+
+  @Test
+  void cacheLookupsAndEventsAreCounted() {
+    metrics.resolveCacheLookup(true);
+    metrics.resolveCacheLookup(false);
+    metrics.resolveCacheLookup(true);
+    metrics.eventUploadCompleted(25, Duration.ofMillis(5), Status.Code.OK);
+    metrics.eventUploadCompleted(10, Duration.ofMillis(5), Status.Code.UNAVAILABLE);
+    metrics.eventsDropped(3);
+
+    final Collection<MetricData> collected = reader.collectAllMetrics();
+    final AttributeKey<String> result = AttributeKey.stringKey("result");
+    final MetricData lookups = metric(collected, "confidence.resolve.cache.lookups");
+    assertThat(longPoint(lookups, Attributes.of(result, "hit")).getValue()).isEqualTo(2);
+    assertThat(longPoint(lookups, Attributes.of(result, "miss")).getValue()).isEqualTo(1);
+    final MetricData uploaded = metric(collected, "confidence.events.uploaded");
+    assertThat(longPoint(uploaded, status("OK")).getValue()).isEqualTo(25);
+    assertThat(longPoint(uploaded, status("UNAVAILABLE")).getValue()).isEqualTo(10);
+    assertThat(
+            histogramPoint(metric(collected, "confidence.events.upload.duration"), status("OK"))
+                .getCount())
+        .isEqualTo(1);
+    assertThat(
+            longPoint(metric(collected, "confidence.events.dropped"), Attributes.empty())
+                .getValue())
+        .isEqualTo(3);
+  }
+
+  @Test
+  void eventQueueIsObservedAsGauges() {
+    final AtomicLong pending = new AtomicLong(7);
+    metrics.registerEventQueue(pending::get, () -> 1024);
+
+    assertThat(
+            longPoint(
+                    metric(reader.collectAllMetrics(), "confidence.events.pending"),
+                    Attributes.empty())
+                .getValue())
+        .isEqualTo(7);
+    pending.set(3);
+    final Collection<MetricData> collected = reader.collectAllMetrics();
+    assertThat(
+            longPoint(metric(collected, "confidence.events.pending"), Attributes.empty())
+                .getValue())
+        .isEqualTo(3);
+    final MetricData memory = metric(collected, "confidence.events.memory");
+    assertThat(memory.getUnit()).isEqualTo("By");
+    assertThat(longPoint(memory, Attributes.empty()).getValue()).isEqualTo(1024);
+  }
+
+  @Test
+  void closedEventQueueIsNoLongerObserved() {
+    metrics.registerEventQueue(() -> 7, () -> 1024).close();
+
+    assertThat(reader.collectAllMetrics())
+        .noneMatch(metric -> metric.getName().equals("confidence.events.pending"));
+  }
+
+  private static Attributes status(String code) {
+    return Attributes.of(AttributeKey.stringKey("status"), code);
+  }
+
+  private static MetricData metric(Collection<MetricData> metrics, String name) {
+    return metrics.stream()
+        .filter(metric -> metric.getName().equals(name))
+        .findFirst()
+        .orElseThrow(() -> new AssertionError("No metric " + name));
+  }
+
+  private static HistogramPointData histogramPoint(MetricData metric, Attributes attributes) {
+    return metric.getHistogramData().getPoints().stream()
+        .filter(point -> point.getAttributes().equals(attributes))
+        .findFirst()
+        .orElseThrow(() -> new AssertionError("No point with " + attributes));
+  }
+
+  private static LongPointData longPoint(MetricData metric, Attributes attributes) {
+    final Collection<LongPointData> points =
+        metric.getType() == io.opentelemetry.sdk.metrics.data.MetricDataType.LONG_SUM
+            ? metric.getLongSumData().getPoints()
+            : metric.getLongGaugeData().getPoints();
+    return points.stream()
+        .filter(point -> point.getAttributes().equals(attributes))
+        .findFirst()
+        .orElseThrow(() -> new AssertionError("No point with " + attributes));
+  }
+}
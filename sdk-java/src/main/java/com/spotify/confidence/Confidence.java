@@ -2,33 +2,48 @@ package com.spotify.confidence;
 
 import static com.spotify.confidence.ConfidenceTypeMapper.getTyped;
 import static com.spotify.confidence.ConfidenceUtils.FlagPath.getPath;
-import static com.spotify.confidence.ConfidenceUtils.getValueForPath;
 
 import com.google.common.annotations.Beta;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
 import com.google.common.io.Closer;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import com.spotify.confidence.ConfidenceTypeMapper.ValueReader;
 import com.spotify.confidence.ConfidenceUtils.FlagPath;
 import com.spotify.confidence.Exceptions.IllegalValuePath;
 import com.spotify.confidence.Exceptions.IllegalValueType;
 import com.spotify.confidence.Exceptions.IncompatibleValueType;
 import com.spotify.confidence.Exceptions.ValueNotFound;
+import com.spotify.confidence.FlagResolverClientImpl.ResolveKey;
 import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsResponse;
 import com.spotify.confidence.shaded.flags.resolver.v1.ResolvedFlag;
+import io.grpc.CompressorRegistry;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collector;
-import java.util.stream.Stream;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.slf4j.Logger;
@@ -36,46 +51,93 @@ import org.slf4j.Logger;
 @Beta
 public abstract class Confidence implements EventSender, Closeable {
 
-  protected Map<String, ConfidenceValue> context = Maps.newHashMap();
+  // the own context is replaced atomically on every change, so readers always see a consistent
+  // snapshot without locking
+  private final AtomicReference<ImmutableMap<String, ConfidenceValue>> context =
+      new AtomicReference<>(ImmutableMap.of());
   private static final Logger log = org.slf4j.LoggerFactory.getLogger(Confidence.class);
+  static final String STALE_REASON = "STALE";
+  @Nullable private volatile EffectiveContext effectiveContext;
 
   private Confidence() {}
 
   protected abstract ClientDelegate client();
 
-  protected Stream<Map.Entry<String, ConfidenceValue>> contextEntries() {
-    return context.entrySet().stream().filter(e -> !e.getValue().isNull());
+  /** Returns the effective context of the parent instance, or an empty context for the root. */
+  protected ConfidenceValue.Struct parentContext() {
+    return ConfidenceValue.Struct.EMPTY;
   }
 
+  /**
+   * Returns the effective context of this instance, which is the context of the parent instance
+   * overridden by the own context. It is computed once and reused until this instance or one of its
+   * ancestors changes its context.
+   */
   @Override
   public ConfidenceValue.Struct getContext() {
-    return contextEntries()
-        .collect(
-            Collector.of(
-                ImmutableMap.Builder<String, ConfidenceValue>::new,
-                ImmutableMap.Builder::put,
-                (b1, b2) -> b1.putAll(b2.build()),
-                builder -> ConfidenceValue.Struct.of(builder.build())));
+    final ImmutableMap<String, ConfidenceValue> ownContext = context.get();
+    final ConfidenceValue.Struct parentContext = parentContext();
+    final EffectiveContext cached = effectiveContext;
+    if (cached != null
+        && cached.parentContext == parentContext
+        && cached.ownContext == ownContext) {
+      return cached.context;
+    }
+    final ConfidenceValue.Struct merged = mergeContext(parentContext, ownContext);
+    effectiveContext = new EffectiveContext(parentContext, ownContext, merged);
+    return merged;
+  }
+
+  private static ConfidenceValue.Struct mergeContext(
+      ConfidenceValue.Struct parentContext, ImmutableMap<String, ConfidenceValue> ownContext) {
+    if (ownContext.isEmpty()) {
+      return parentContext;
+    }
+    final ImmutableMap.Builder<String, ConfidenceValue> builder =
+        ImmutableMap.builderWithExpectedSize(parentContext.asMap().size() + ownContext.size());
+    parentContext
+        .asMap()
+        .forEach(
+            (key, value) -> {
+              if (!ownContext.containsKey(key)) {
+                builder.put(key, value);
+              }
+            });
+    // own entries set to null remove the entry of the parent context
+    ownContext.forEach(
+        (key, value) -> {
+          if (!value.isNull()) {
+            builder.put(key, value);
+          }
+        });
+    return ConfidenceValue.Struct.ofMap(builder.build());
   }
 
   @Override
   public void setContext(ConfidenceValue.Struct context) {
-    this.context = Maps.newHashMap(context.asMap());
+    this.context.set(ImmutableMap.copyOf(context.asMap()));
   }
 
   @Override
   public void updateContextEntry(String key, ConfidenceValue value) {
-    this.context.put(key, value);
+    this.context.updateAndGet(ownContext -> withEntry(ownContext, key, value));
   }
 
   @Override
   public void removeContextEntry(String key) {
-    this.context.put(key, ConfidenceValue.NULL_VALUE);
+    this.context.updateAndGet(ownContext -> withEntry(ownContext, key, ConfidenceValue.NULL_VALUE));
   }
 
   @Override
   public void clearContext() {
-    this.context.clear();
+    this.context.set(ImmutableMap.of());
+  }
+
+  private static ImmutableMap<String, ConfidenceValue> withEntry(
+      ImmutableMap<String, ConfidenceValue> map, String key, ConfidenceValue value) {
+    final Map<String, ConfidenceValue> copy = new LinkedHashMap<>(map);
+    copy.put(key, value);
+    return ImmutableMap.copyOf(copy);
   }
 
   @Override
@@ -112,33 +174,379 @@ public abstract class Confidence implements EventSender, Closeable {
     }
   }
 
+  /**
+   * Returns a typed handle to a flag, to evaluate it without parsing the key and checking the type
+   * of the default value on every evaluation, see {@link FlagKey}.
+   *
+   * @param key the flag name, optionally followed by a path into the flag value, e.g.
+   *     "flag-name.property-name"
+   * @param type the type of the value at the path: {@link String}, {@link Integer}, {@link Double},
+   *     {@link Boolean}, {@link ConfidenceValue.List} or {@link ConfidenceValue.Struct}
+   * @throws IllegalArgumentException if the key is malformed or the type isn't supported
+   */
+  public static <T> FlagKey<T> flag(String key, Class<T> type) {
+    return FlagKey.of(key, type);
+  }
+
   public <T> T getValue(String key, T defaultValue) {
     return getEvaluation(key, defaultValue).getValue();
   }
 
+  public <T> T getValue(FlagKey<T> flag, T defaultValue) {
+    return getEvaluation(flag, defaultValue).getValue();
+  }
+
+  /**
+   * Evaluates a boolean flag without boxing the value. Errors are logged, and the default value is
+   * returned, use {@link #getEvaluation(String, Object)} for the details of an evaluation.
+   *
+   * @param key the flag name, optionally followed by a path into the flag value, e.g.
+   *     "flag-name.property-name"
+   * @param defaultValue the value to use if the flag can't be evaluated
+   */
+  public boolean getBoolean(String key, boolean defaultValue) {
+    final ConfidenceValue value = evaluateValue(key, ConfidenceTypeMapper.BOOLEAN_VALUE);
+    return value.isNull() ? defaultValue : value.asBoolean();
+  }
+
+  public boolean getBoolean(FlagKey<Boolean> flag, boolean defaultValue) {
+    final ConfidenceValue value = evaluateValue(flag, ConfidenceTypeMapper.BOOLEAN_VALUE);
+    return value.isNull() ? defaultValue : value.asBoolean();
+  }
+
+  /**
+   * Evaluates an integer flag without boxing the value, see {@link #getBoolean(String, boolean)}.
+   */
+  public int getInt(String key, int defaultValue) {
+    final ConfidenceValue value = evaluateValue(key, ConfidenceTypeMapper.INT_VALUE);
+    return value.isNull() ? defaultValue : value.asInteger();
+  }
+
+  public int getInt(FlagKey<Integer> flag, int defaultValue) {
+    final ConfidenceValue value = evaluateValue(flag, ConfidenceTypeMapper.INT_VALUE);
+    return value.isNull() ? defaultValue : value.asInteger();
+  }
+
+  /** Evaluates a double flag without boxing the value, see {@link #getBoolean(String, boolean)}. */
+  public double getDouble(String key, double defaultValue) {
+    final ConfidenceValue value = evaluateValue(key, ConfidenceTypeMapper.DOUBLE_VALUE);
+    return value.isNull() ? defaultValue : value.asDouble();
+  }
+
+  public double getDouble(FlagKey<Double> flag, double defaultValue) {
+    final ConfidenceValue value = evaluateValue(flag, ConfidenceTypeMapper.DOUBLE_VALUE);
+    return value.isNull() ? defaultValue : value.asDouble();
+  }
+
+  /**
+   * Evaluates a flag to its decoded value, which is {@link ConfidenceValue#NULL_VALUE} if the
+   * default value should be used instead.
+   */
+  private ConfidenceValue evaluateValue(String key, ValueReader<ConfidenceValue> reader) {
+    final FlagPath flagPath;
+    try {
+      flagPath = getPath(key);
+    } catch (IllegalValuePath e) {
+      log.warn(e.getMessage());
+      return ConfidenceValue.NULL_VALUE;
+    }
+    return getEvaluationAsync(
+            flagPath, "flags/" + flagPath.getFlag(), ConfidenceValue.NULL_VALUE, null, reader)
+        .join()
+        .getValue();
+  }
+
+  private ConfidenceValue evaluateValue(FlagKey<?> flag, ValueReader<ConfidenceValue> reader) {
+    return getEvaluationAsync(
+            flag.flagPath(), flag.requestFlagName(), ConfidenceValue.NULL_VALUE, null, reader)
+        .join()
+        .getValue();
+  }
+
+  public <T> FlagEvaluation<T> getEvaluation(FlagKey<T> flag, T defaultValue) {
+    return getEvaluationAsync(flag, defaultValue).join();
+  }
+
+  /**
+   * Evaluates a flag without blocking the calling thread, like {@link #getEvaluationAsync(String,
+   * Object)}.
+   *
+   * @param flag the handle of the flag, see {@link #flag(String, Class)}
+   * @param defaultValue the value to use if the flag can't be evaluated
+   */
+  public <T> CompletableFuture<FlagEvaluation<T>> getEvaluationAsync(
+      FlagKey<T> flag, T defaultValue) {
+    return getEvaluationAsync(
+        flag.flagPath(), flag.requestFlagName(), defaultValue, null, flag.reader());
+  }
+
   public <T> FlagEvaluation<T> getEvaluation(String key, T defaultValue) {
+    return getEvaluationAsync(key, defaultValue).join();
+  }
+
+  /**
+   * Evaluates a flag, falling back to the default value if the flag isn't resolved within the given
+   * deadline. The deadline replaces the resolve deadline of the {@link Builder} for this call, and
+   * may be longer or shorter. If an identical resolve is already in flight, the call waits at most
+   * the deadline for it instead of sending another request, and that request keeps its own
+   * deadline.
+   *
+   * @param key the flag name, optionally followed by a path into the flag value, e.g.
+   *     "flag-name.property-name"
+   * @param defaultValue the value to use if the flag can't be evaluated
+   * @param deadline the maximum time to wait for the resolve
+   */
+  public <T> FlagEvaluation<T> getEvaluation(String key, T defaultValue, Duration deadline) {
+    return getEvaluationAsync(key, defaultValue, deadline).join();
+  }
+
+  /**
+   * Evaluates a flag without blocking the calling thread. The returned future never completes
+   * exceptionally: errors are reported in the {@link FlagEvaluation}, together with the default
+   * value.
+   *
+   * @param key the flag name, optionally followed by a path into the flag value, e.g.
+   *     "flag-name.property-name"
+   * @param defaultValue the value to use if the flag can't be evaluated
+   */
+  public <T> CompletableFuture<FlagEvaluation<T>> getEvaluationAsync(String key, T defaultValue) {
+    return getEvaluationAsync(key, defaultValue, null);
+  }
+
+  /**
+   * Evaluates a flag without blocking the calling thread, falling back to the default value if the
+   * flag isn't resolved within the given deadline, see {@link #getEvaluation(String, Object,
+   * Duration)}.
+   *
+   * @param key the flag name, optionally followed by a path into the flag value, e.g.
+   *     "flag-name.property-name"
+   * @param defaultValue the value to use if the flag can't be evaluated
+   * @param deadline the deadline of the resolve, or null for the resolve deadline of the {@link
+   *     Builder}
+   */
+  public <T> CompletableFuture<FlagEvaluation<T>> getEvaluationAsync(
+      String key, T defaultValue, @Nullable Duration deadline) {
+    final FlagPath flagPath;
+    try {
+      flagPath = getPath(key);
+    } catch (IllegalValuePath e) {
+      return CompletableFuture.completedFuture(
+          errorEvaluation(defaultValue, ErrorType.INVALID_VALUE_PATH, e.getMessage()));
+    }
+    return getEvaluationAsync(
+        flagPath,
+        "flags/" + flagPath.getFlag(),
+        defaultValue,
+        deadline,
+        value -> getTyped(value, defaultValue));
+  }
+
+  private <T> CompletableFuture<FlagEvaluation<T>> getEvaluationAsync(
+      FlagPath flagPath,
+      String requestFlagName,
+      T defaultValue,
+      @Nullable Duration deadline,
+      ValueReader<T> reader) {
+    final ClientDelegate client;
+    final ConfidenceValue.Struct context;
+    final CompletableFuture<ResolveFlagsResponse> response;
+    try {
+      client = client();
+      context = getContext();
+      response =
+          deadline == null
+              ? client.resolveFlags(List.of(requestFlagName), context, false)
+              : client.resolveFlags(List.of(requestFlagName), context, false, deadline);
+    } catch (Exception e) {
+      // catch all for any runtime exception
+      return CompletableFuture.completedFuture(
+          errorEvaluation(defaultValue, ErrorType.INTERNAL_ERROR, e.getMessage()));
+    }
+    return response.handle(
+        (resolveResponse, throwable) -> {
+          if (throwable != null) {
+            final Throwable cause =
+                throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause()
+                    : throwable;
+            final boolean deadlineExceeded =
+                cause instanceof TimeoutException
+                    || Status.fromThrowable(cause).getCode() == Status.Code.DEADLINE_EXCEEDED;
+            if (deadlineExceeded) {
+              client.recordDeadlineExceeded();
+            }
+            final Optional<ResolveFlagsResponse> lastKnownResolve =
+                client.lastKnownResolve(List.of(requestFlagName), context, false);
+            if (lastKnownResolve.isPresent()) {
+              log.debug(
+                  "Serving the last known value of flag '{}' after a failed resolve: {}",
+                  flagPath.getFlag(),
+                  cause.getMessage());
+              return stale(
+                  evaluate(
+                      flagPath,
+                      requestFlagName,
+                      lastKnownResolve.get(),
+                      false,
+                      defaultValue,
+                      reader));
+            }
+            if (cause instanceof TimeoutException) {
+              return errorEvaluation(
+                  defaultValue,
+                  ErrorType.NETWORK_ERROR,
+                  String.format(
+                      "Resolving flag '%s' timed out after %d ms",
+                      flagPath.getFlag(), deadline.toMillis()));
+            }
+            if (deadlineExceeded) {
+              return errorEvaluation(
+                  defaultValue,
+                  ErrorType.NETWORK_ERROR,
+                  String.format("Deadline exceeded when resolving flag '%s'", flagPath.getFlag()));
+            }
+            return errorEvaluation(defaultValue, ErrorType.INTERNAL_ERROR, cause.getMessage());
+          }
+          return evaluate(flagPath, requestFlagName, resolveResponse, true, defaultValue, reader);
+        });
+  }
+
+  private <T> FlagEvaluation<T> evaluate(
+      FlagPath flagPath,
+      String requestFlagName,
+      ResolveFlagsResponse response,
+      boolean apply,
+      T defaultValue,
+      ValueReader<T> reader) {
     try {
-      final FlagPath flagPath = getPath(key);
-      final String requestFlagName = "flags/" + flagPath.getFlag();
-      final ResolveFlagsResponse response = resolveFlags(requestFlagName, false).get();
       if (response.getResolvedFlagsList().isEmpty()) {
-        final String errorMessage =
-            String.format("No active flag '%s' was found", flagPath.getFlag());
-        log.warn(errorMessage);
-        return new FlagEvaluation<>(
-            defaultValue, "", "ERROR", ErrorType.FLAG_NOT_FOUND, errorMessage);
+        return errorEvaluation(
+            defaultValue,
+            ErrorType.FLAG_NOT_FOUND,
+            String.format("No active flag '%s' was found", flagPath.getFlag()));
       }
 
       final ResolvedFlag resolvedFlag = response.getResolvedFlags(0);
       if (!requestFlagName.equals(resolvedFlag.getFlag())) {
-        final String errorMessage =
+        return errorEvaluation(
+            defaultValue,
+            ErrorType.INTERNAL_ERROR,
             String.format(
                 "Unexpected flag '%s' from remote",
-                resolvedFlag.getFlag().replaceFirst("^flags/", ""));
-        log.warn(errorMessage);
-        return new FlagEvaluation<>(
-            defaultValue, "", "ERROR", ErrorType.INTERNAL_ERROR, errorMessage);
+                resolvedFlag.getFlag().replaceFirst("^flags/", "")));
+      }
+      if (apply) {
+        applyFlag(resolvedFlag.getFlag(), response.getResolveToken());
+      }
+      return evaluate(client(), flagPath, resolvedFlag, defaultValue, reader);
+    } catch (Exception e) {
+      // catch all for any runtime exception
+      return errorEvaluation(defaultValue, ErrorType.INTERNAL_ERROR, e.getMessage());
+    }
+  }
+
+  /**
+   * Evaluates several flags in the current context using a single resolve request.
+   *
+   * <p>Keys follow the same {@code "flag-name.property-name"} format as {@link
+   * #getEvaluation(String, Object)}, and several keys may point into the same flag. The returned
+   * map contains one evaluation per key of {@code defaultValues}, in the same iteration order.
+   *
+   * @param defaultValues the default value to use for each key
+   * @return the evaluation for each key
+   */
+  public <T> Map<String, FlagEvaluation<T>> getEvaluations(Map<String, T> defaultValues) {
+    final Map<String, FlagPath> flagPaths = new LinkedHashMap<>();
+    final Map<String, FlagEvaluation<T>> evaluations = new LinkedHashMap<>();
+    defaultValues.forEach(
+        (key, defaultValue) -> {
+          try {
+            flagPaths.put(key, getPath(key));
+          } catch (IllegalValuePath e) {
+            evaluations.put(
+                key, errorEvaluation(defaultValue, ErrorType.INVALID_VALUE_PATH, e.getMessage()));
+          }
+        });
+
+    final List<String> requestFlagNames =
+        flagPaths.values().stream()
+            .map(flagPath -> "flags/" + flagPath.getFlag())
+            .distinct()
+            .collect(Collectors.toList());
+    Map<String, ResolvedFlag> resolvedFlags = Map.of();
+    String resolveError = null;
+    boolean stale = false;
+    if (!requestFlagNames.isEmpty()) {
+      ResolveFlagsResponse response = null;
+      try {
+        response = resolveFlags(requestFlagNames, false).get();
+      } catch (Exception e) {
+        // catch all for any runtime exception
+        if (Status.fromThrowable(e).getCode() == Status.Code.DEADLINE_EXCEEDED) {
+          recordDeadlineExceeded();
+        }
+        final Optional<ResolveFlagsResponse> lastKnownResolve =
+            client().lastKnownResolve(requestFlagNames, getContext(), false);
+        if (lastKnownResolve.isPresent()) {
+          response = lastKnownResolve.get();
+          stale = true;
+        } else {
+          resolveError = e.getMessage();
+        }
       }
+      if (response != null) {
+        final ByteString resolveToken = response.getResolveToken();
+        resolvedFlags =
+            response.getResolvedFlagsList().stream()
+                .collect(
+                    Collectors.toMap(
+                        ResolvedFlag::getFlag, Function.identity(), (first, second) -> first));
+        if (!stale) {
+          resolvedFlags.keySet().forEach(flag -> applyFlag(flag, resolveToken));
+        }
+      }
+    }
+
+    final Map<String, FlagEvaluation<T>> result = new LinkedHashMap<>();
+    for (Map.Entry<String, T> entry : defaultValues.entrySet()) {
+      final String key = entry.getKey();
+      final T defaultValue = entry.getValue();
+      final FlagPath flagPath = flagPaths.get(key);
+      if (flagPath == null) {
+        result.put(key, evaluations.get(key));
+      } else if (resolveError != null) {
+        result.put(key, errorEvaluation(defaultValue, ErrorType.INTERNAL_ERROR, resolveError));
+      } else {
+        final ResolvedFlag resolvedFlag = resolvedFlags.get("flags/" + flagPath.getFlag());
+        if (resolvedFlag == null) {
+          result.put(
+              key,
+              errorEvaluation(
+                  defaultValue,
+                  ErrorType.FLAG_NOT_FOUND,
+                  String.format("No active flag '%s' was found", flagPath.getFlag())));
+        } else {
+          final FlagEvaluation<T> evaluation =
+              evaluate(
+                  client(),
+                  flagPath,
+                  resolvedFlag,
+                  defaultValue,
+                  value -> getTyped(value, defaultValue));
+          result.put(key, stale ? stale(evaluation) : evaluation);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static <T> FlagEvaluation<T> evaluate(
+      FlagResolverClient client,
+      FlagPath flagPath,
+      ResolvedFlag resolvedFlag,
+      T defaultValue,
+      ValueReader<T> reader) {
+    try {
       if (resolvedFlag.getVariant().isEmpty()) {
         final String errorMessage =
             String.format(
@@ -148,36 +556,95 @@ public abstract class Confidence implements EventSender, Closeable {
         log.debug(errorMessage);
         return new FlagEvaluation<>(defaultValue, "", resolvedFlag.getReason().toString());
       } else {
-        final ConfidenceValue confidenceValue;
-        confidenceValue =
-            getValueForPath(
-                flagPath.getPath(),
-                ConfidenceTypeMapper.from(resolvedFlag.getValue(), resolvedFlag.getFlagSchema()));
+        final ConfidenceValue confidenceValue = client.flagValue(resolvedFlag, flagPath.getPath());
 
         // regular resolve was successful
         return new FlagEvaluation<>(
-            getTyped(confidenceValue, defaultValue),
+            confidenceValue.isNull() ? defaultValue : reader.read(confidenceValue),
             resolvedFlag.getVariant(),
             resolvedFlag.getReason().toString());
       }
-    } catch (IllegalValuePath | ValueNotFound e) {
-      log.warn(e.getMessage());
-      return new FlagEvaluation<>(
-          defaultValue, "", "ERROR", ErrorType.INVALID_VALUE_PATH, e.getMessage());
+    } catch (ValueNotFound e) {
+      return errorEvaluation(defaultValue, ErrorType.INVALID_VALUE_PATH, e.getMessage());
     } catch (IncompatibleValueType | IllegalValueType e) {
-      log.warn(e.getMessage());
-      return new FlagEvaluation<>(
-          defaultValue, "", "ERROR", ErrorType.INVALID_VALUE_TYPE, e.getMessage());
+      return errorEvaluation(defaultValue, ErrorType.INVALID_VALUE_TYPE, e.getMessage());
     } catch (Exception e) {
       // catch all for any runtime exception
-      log.warn(e.getMessage());
-      return new FlagEvaluation<>(
-          defaultValue, "", "ERROR", ErrorType.INTERNAL_ERROR, e.getMessage());
+      return errorEvaluation(defaultValue, ErrorType.INTERNAL_ERROR, e.getMessage());
     }
   }
 
+  /** Marks an evaluation of a flag from the resolve history as stale, unless it failed. */
+  private static <T> FlagEvaluation<T> stale(FlagEvaluation<T> evaluation) {
+    if (evaluation.getErrorType().isEmpty()) {
+      evaluation.setReason(STALE_REASON);
+    }
+    return evaluation;
+  }
+
+  private static <T> FlagEvaluation<T> errorEvaluation(
+      T defaultValue, ErrorType errorType, String errorMessage) {
+    log.warn(errorMessage);
+    return new FlagEvaluation<>(defaultValue, "", "ERROR", errorType, errorMessage);
+  }
+
+  /**
+   * Reports the exposure of a resolved flag when the SDK is configured to defer applies, see {@link
+   * Builder#deferredApply(Duration)}.
+   */
+  void applyFlag(String flagName, ByteString resolveToken) {
+    client().apply(flagName, resolveToken);
+  }
+
+  /**
+   * Whether the SDK is configured to defer applies, see {@link Builder#deferredApply(Duration)}.
+   */
+  boolean defersApply() {
+    return client().defersApply();
+  }
+
+  /**
+   * Returns the last successful resolve of a flag in the current context, if a resolve history is
+   * kept, see {@link Builder#resolveHistory(long, Duration)}.
+   */
+  Optional<ResolveFlagsResponse> lastKnownResolve(String flagName, Boolean isProvider) {
+    return client().lastKnownResolve(List.of(flagName), getContext(), isProvider);
+  }
+
   CompletableFuture<ResolveFlagsResponse> resolveFlags(String flagName, Boolean isProvider) {
-    return client().resolveFlags(flagName, getContext(), isProvider);
+    return resolveFlags(List.of(flagName), isProvider);
+  }
+
+  CompletableFuture<ResolveFlagsResponse> resolveFlags(List<String> flagNames, Boolean isProvider) {
+    return client().resolveFlags(flagNames, getContext(), isProvider);
+  }
+
+  /**
+   * Resolves flags in the current context from the backend, bypassing the resolve cache, see {@link
+   * FlagResolverClient#refreshFlags(List, ConfidenceValue.Struct, Boolean)}.
+   */
+  CompletableFuture<ResolveFlagsResponse> refreshFlags(List<String> flagNames, Boolean isProvider) {
+    return client().refreshFlags(flagNames, getContext(), isProvider);
+  }
+
+  /**
+   * Returns hit, miss and eviction counts of the resolve cache, if one was configured with {@link
+   * Builder#resolveCache(long, Duration)} or {@link Builder#resolveCache(String)}.
+   */
+  public Optional<CacheStats> getResolveCacheStats() {
+    return client().resolveCacheStats();
+  }
+
+  /**
+   * Returns the number of flag evaluations that fell back to the default value because the resolve
+   * deadline was exceeded, including per-call deadlines and timeouts.
+   */
+  public long getDeadlineExceededCount() {
+    return client().deadlineExceededCount();
+  }
+
+  void recordDeadlineExceeded() {
+    client().recordDeadlineExceeded();
   }
 
   @VisibleForTesting
@@ -197,6 +664,7 @@ public abstract class Confidence implements EventSender, Closeable {
     private final Closeable closeable;
     private final FlagResolverClient flagResolverClient;
     private final EventSenderEngine eventSenderEngine;
+    private final AtomicLong deadlineExceeded = new AtomicLong();
 
     private ClientDelegate(
         Closeable closeable,
@@ -220,8 +688,55 @@ public abstract class Confidence implements EventSender, Closeable {
 
     @Override
     public CompletableFuture<ResolveFlagsResponse> resolveFlags(
-        String flag, ConfidenceValue.Struct context, Boolean isProvider) {
-      return flagResolverClient.resolveFlags(flag, context, isProvider);
+        List<String> flags, ConfidenceValue.Struct context, Boolean isProvider) {
+      return flagResolverClient.resolveFlags(flags, context, isProvider);
+    }
+
+    @Override
+    public CompletableFuture<ResolveFlagsResponse> resolveFlags(
+        List<String> flags, ConfidenceValue.Struct context, Boolean isProvider, Duration deadline) {
+      return flagResolverClient.resolveFlags(flags, context, isProvider, deadline);
+    }
+
+    @Override
+    public CompletableFuture<ResolveFlagsResponse> refreshFlags(
+        List<String> flags, ConfidenceValue.Struct context, Boolean isProvider) {
+      return flagResolverClient.refreshFlags(flags, context, isProvider);
+    }
+
+    @Override
+    public void apply(String flag, ByteString resolveToken) {
+      flagResolverClient.apply(flag, resolveToken);
+    }
+
+    @Override
+    public ConfidenceValue flagValue(ResolvedFlag resolvedFlag, List<String> path)
+        throws ValueNotFound {
+      return flagResolverClient.flagValue(resolvedFlag, path);
+    }
+
+    @Override
+    public boolean defersApply() {
+      return flagResolverClient.defersApply();
+    }
+
+    @Override
+    public Optional<ResolveFlagsResponse> lastKnownResolve(
+        List<String> flags, ConfidenceValue.Struct context, Boolean isProvider) {
+      return flagResolverClient.lastKnownResolve(flags, context, isProvider);
+    }
+
+    @Override
+    public Optional<CacheStats> resolveCacheStats() {
+      return flagResolverClient.resolveCacheStats();
+    }
+
+    void recordDeadlineExceeded() {
+      deadlineExceeded.incrementAndGet();
+    }
+
+    long deadlineExceededCount() {
+      return deadlineExceeded.get();
     }
 
     @Override
@@ -230,6 +745,22 @@ public abstract class Confidence implements EventSender, Closeable {
     }
   }
 
+  /** The effective context of an instance, and what it was computed from. */
+  private static final class EffectiveContext {
+    private final ConfidenceValue.Struct parentContext;
+    private final ImmutableMap<String, ConfidenceValue> ownContext;
+    private final ConfidenceValue.Struct context;
+
+    private EffectiveContext(
+        ConfidenceValue.Struct parentContext,
+        ImmutableMap<String, ConfidenceValue> ownContext,
+        ConfidenceValue.Struct context) {
+      this.parentContext = parentContext;
+      this.ownContext = ownContext;
+      this.context = context;
+    }
+  }
+
   private static class ChildInstance extends Confidence {
 
     private final Confidence parent;
@@ -240,11 +771,8 @@ public abstract class Confidence implements EventSender, Closeable {
     }
 
     @Override
-    protected Stream<Map.Entry<String, ConfidenceValue>> contextEntries() {
-      final Set<String> ownKeys = context.keySet();
-      return Stream.concat(
-          parent.contextEntries().filter(entry -> !ownKeys.contains(entry.getKey())),
-          super.contextEntries());
+    protected ConfidenceValue.Struct parentContext() {
+      return parent.getContext();
     }
 
     @Override
@@ -300,7 +828,24 @@ public abstract class Confidence implements EventSender, Closeable {
         ManagedChannelBuilder.forAddress("edge-grpc.spotify.com", 443)
             .keepAliveTime(Duration.ofMinutes(5).getSeconds(), TimeUnit.SECONDS)
             .build();
+    static final long DEFAULT_SNAPSHOT_HISTORY_SIZE = 10_000;
+    static final Duration DEFAULT_SNAPSHOT_MAX_STALENESS = Duration.ofDays(1);
     private ManagedChannel flagResolverManagedChannel = DEFAULT_CHANNEL;
+    @Nullable private CacheBuilder<Object, Object> resolveCacheBuilder;
+    @Nullable private Duration applyFlushInterval;
+    private long resolveHistorySize;
+    @Nullable private Duration resolveHistoryMaxStaleness;
+    @Nullable private Path snapshotFile;
+    @Nullable private Executor callbackExecutor;
+    private Duration resolveDeadline = GrpcFlagResolver.DEFAULT_RESOLVE_DEADLINE;
+    private int eventBatchMaxEvents = EventSenderEngineImpl.DEFAULT_BATCH_SIZE;
+    private long eventBatchMaxBytes = EventSenderEngineImpl.DEFAULT_MAX_BATCH_BYTES;
+    @Nullable private Duration eventUploadTargetLatency;
+    private int maxInFlightEventUploads = EventSenderEngineImpl.DEFAULT_MAX_IN_FLIGHT_UPLOADS;
+    @Nullable private String eventCompression;
+    @Nullable private Path eventSpillDirectory;
+    private long eventSpillMaxBytes;
+    private ConfidenceMetrics metrics = ConfidenceMetrics.NOOP;
 
     public Builder(@Nonnull String clientSecret) {
       this.clientSecret = clientSecret;
@@ -319,17 +864,304 @@ public abstract class Confidence implements EventSender, Closeable {
       return this;
     }
 
+    /**
+     * Caches resolve responses per set of requested flags and evaluation context, so that repeated
+     * evaluations of the same flags in the same context don't reach the backend. The order of the
+     * flags in a batch doesn't matter, but a batch and a single flag of it are cached separately.
+     *
+     * @param maximumSize the maximum number of cached resolve responses
+     * @param timeToLive how long a resolve response is served from the cache
+     */
+    public Builder resolveCache(long maximumSize, Duration timeToLive) {
+      this.resolveCacheBuilder =
+          CacheBuilder.newBuilder()
+              .maximumSize(maximumSize)
+              .expireAfterWrite(timeToLive.toNanos(), TimeUnit.NANOSECONDS);
+      return this;
+    }
+
+    /**
+     * Caches resolve responses per flag and evaluation context, with size and eviction configured
+     * by a {@link CacheBuilderSpec} string such as {@code
+     * "maximumSize=10000,expireAfterAccess=30s"}.
+     *
+     * @param cacheSpec the cache specification
+     */
+    public Builder resolveCache(String cacheSpec) {
+      this.resolveCacheBuilder = CacheBuilder.from(cacheSpec);
+      return this;
+    }
+
+    /**
+     * Resolves flags without applying them, and reports flag exposures in the background once flag
+     * values are actually used. This keeps exposures accurate when resolves are cached.
+     */
+    public Builder deferredApply() {
+      return deferredApply(FlagApplierImpl.DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * Resolves flags without applying them, and reports flag exposures in the background once flag
+     * values are actually used. This keeps exposures accurate when resolves are cached.
+     *
+     * @param flushInterval how often applied flags are sent to the backend
+     */
+    public Builder deferredApply(Duration flushInterval) {
+      this.applyFlushInterval = flushInterval;
+      return this;
+    }
+
+    /**
+     * Sets the deadline of resolve requests, after which evaluations fall back to the default
+     * value. Defaults to 10 seconds.
+     *
+     * @param resolveDeadline the resolve deadline
+     */
+    public Builder resolveDeadline(Duration resolveDeadline) {
+      if (resolveDeadline.isZero() || resolveDeadline.isNegative()) {
+        throw new IllegalArgumentException("resolveDeadline must be positive");
+      }
+      this.resolveDeadline = resolveDeadline;
+      return this;
+    }
+
+    /**
+     * Keeps the last successful resolve per flag and evaluation context. When a resolve fails or
+     * times out, evaluations are served from this history with the reason {@code "STALE"} instead
+     * of falling back to the default value, while the resolve that is still in flight refreshes the
+     * history in the background. Flags served from the history aren't applied, since their resolve
+     * may be from an earlier process.
+     *
+     * @param maximumSize the maximum number of remembered resolve responses
+     * @param maxStaleness how long a resolve response may be served after it was received
+     */
+    public Builder resolveHistory(long maximumSize, Duration maxStaleness) {
+      if (maxStaleness.isZero() || maxStaleness.isNegative()) {
+        throw new IllegalArgumentException("maxStaleness must be positive");
+      }
+      this.resolveHistorySize = maximumSize;
+      this.resolveHistoryMaxStaleness = maxStaleness;
+      return this;
+    }
+
+    /**
+     * Restores the resolve history from a snapshot file on startup, and writes the resolve history
+     * back to the file when the client is closed. Snapshot values are only served as stale values
+     * when the backend can't be reached, they are neither cached nor applied. The snapshot keeps
+     * the time each resolve was received, so restored resolves are only served until they are older
+     * than the max staleness of the history. Unless {@link #resolveHistory(long, Duration)} is
+     * configured, a resolve history of {@value #DEFAULT_SNAPSHOT_HISTORY_SIZE} entries with a max
+     * staleness of one day is kept for the snapshot.
+     *
+     * @param snapshotFile the snapshot file, which doesn't need to exist yet
+     */
+    public Builder snapshot(Path snapshotFile) {
+      this.snapshotFile = snapshotFile;
+      return this;
+    }
+
+    /**
+     * Sets the executor that completes resolve requests. Callbacks of the futures returned by
+     * {@link Confidence#getEvaluationAsync(String, Object)} that wait for a resolve run on this
+     * executor, unless they specify their own. By default, resolves are completed on gRPC threads.
+     * Blocking evaluations such as {@link Confidence#getValue(String, Object)} still wait on the
+     * calling thread.
+     *
+     * <p>Not every callback runs on this executor: a resolve served from the resolve cache returns
+     * a future that is already completed, so its callbacks run on the thread that registers them,
+     * and a call that waits for a resolve already in flight is timed out at its deadline by the
+     * JDK's {@link CompletableFuture#orTimeout} thread, which then runs its callbacks. Use the
+     * {@code *Async} variants with an executor for callbacks that must not run on those threads.
+     *
+     * @param callbackExecutor the executor for resolve completions, which isn't shut down when the
+     *     client is closed
+     */
+    public Builder callbackExecutor(Executor callbackExecutor) {
+      this.callbackExecutor = callbackExecutor;
+      return this;
+    }
+
+    /**
+     * Sets how many tracked events are sent per request. A batch is sent once it reaches either
+     * limit, or when the events are flushed. Defaults to 25 events and 1MB.
+     *
+     * @param maxEvents the maximum number of events per batch
+     * @param maxBytes the maximum serialized size of a batch, exceeded only by a single large event
+     */
+    public Builder eventBatchSize(int maxEvents, long maxBytes) {
+      if (maxEvents <= 0 || maxBytes <= 0) {
+        throw new IllegalArgumentException("maxEvents and maxBytes must be positive");
+      }
+      this.eventBatchMaxEvents = maxEvents;
+      this.eventBatchMaxBytes = maxBytes;
+      return this;
+    }
+
+    /**
+     * Adapts the number of events per batch to the upload latency. Batches are halved when an
+     * upload is slower than the target latency or fails, and grow back towards the maximum of
+     * {@link #eventBatchSize(int, long)} while uploads are faster.
+     *
+     * @param targetLatency the upload latency to stay below
+     */
+    public Builder adaptiveEventBatchSize(Duration targetLatency) {
+      if (targetLatency.isZero() || targetLatency.isNegative()) {
+        throw new IllegalArgumentException("targetLatency must be positive");
+      }
+      this.eventUploadTargetLatency = targetLatency;
+      return this;
+    }
+
+    /**
+     * Limits how many batches of tracked events are uploaded at the same time. When the limit is
+     * reached, further batches wait for an upload to complete, and events are queued in memory
+     * meanwhile. Defaults to {@value EventSenderEngineImpl#DEFAULT_MAX_IN_FLIGHT_UPLOADS}.
+     *
+     * @param maxInFlightEventUploads the maximum number of concurrent uploads
+     */
+    public Builder maxInFlightEventUploads(int maxInFlightEventUploads) {
+      if (maxInFlightEventUploads <= 0) {
+        throw new IllegalArgumentException("maxInFlightEventUploads must be positive");
+      }
+      this.maxInFlightEventUploads = maxInFlightEventUploads;
+      return this;
+    }
+
+    /**
+     * Compresses requests that upload tracked events. Events of a batch share most of their keys
+     * and often their context, so they compress well, at the cost of some CPU time.
+     *
+     * @param compression name of a compressor in the default {@link CompressorRegistry}, such as
+     *     {@code "gzip"}
+     */
+    public Builder eventCompression(String compression) {
+      if (CompressorRegistry.getDefaultInstance().lookupCompressor(compression) == null) {
+        throw new IllegalArgumentException("Unknown compression: " + compression);
+      }
+      this.eventCompression = compression;
+      return this;
+    }
+
+    /**
+     * Keeps tracked events on disk when they can't be kept in memory, when their upload keeps
+     * failing, or when they are still pending as the client is closed. Such events are uploaded
+     * once uploads succeed again, also by a later process using the same directory. Events may be
+     * uploaded more than once, if a process stops while they are uploaded from disk.
+     *
+     * @param directory the directory of the event files, which only one client may use at a time
+     * @param maxBytes the maximum size of the event files, beyond which events are dropped
+     */
+    public Builder eventSpillQueue(Path directory, long maxBytes) {
+      if (maxBytes < EventSpillQueue.DEFAULT_MAX_SEGMENT_BYTES) {
+        throw new IllegalArgumentException(
+            "maxBytes must be at least " + EventSpillQueue.DEFAULT_MAX_SEGMENT_BYTES);
+      }
+      this.eventSpillDirectory = directory;
+      this.eventSpillMaxBytes = maxBytes;
+      return this;
+    }
+
+    /**
+     * Reports the latency and status of resolve and event upload requests, resolve cache lookups,
+     * the state of the event queue and dropped events. The {@code sdk-java-micrometer} and {@code
+     * sdk-java-opentelemetry} modules report them to the respective metrics library.
+     *
+     * @param metrics receives the measurements
+     */
+    public Builder metrics(ConfidenceMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
     public Confidence build() {
+      final Executor resolveExecutor =
+          callbackExecutor == null ? MoreExecutors.directExecutor() : callbackExecutor;
+      final GrpcFlagResolver flagResolver =
+          new GrpcFlagResolver(
+              clientSecret,
+              flagResolverManagedChannel,
+              applyFlushInterval == null,
+              resolveDeadline,
+              resolveExecutor,
+              metrics);
+      final Cache<ResolveKey, ResolveFlagsResponse> resolveCache =
+          resolveCacheBuilder == null ? null : resolveCacheBuilder.recordStats().build();
+      ResolveHistory resolveHistory =
+          resolveHistoryMaxStaleness == null
+              ? null
+              : new ResolveHistory(resolveHistorySize, resolveHistoryMaxStaleness, Instant::now);
+      if (snapshotFile != null) {
+        if (resolveHistory == null) {
+          resolveHistory =
+              new ResolveHistory(
+                  DEFAULT_SNAPSHOT_HISTORY_SIZE, DEFAULT_SNAPSHOT_MAX_STALENESS, Instant::now);
+        }
+        readSnapshot(snapshotFile).forEach(resolveHistory::restore);
+      }
       final FlagResolverClient flagResolverClient =
           new FlagResolverClientImpl(
-              new GrpcFlagResolver(clientSecret, flagResolverManagedChannel));
+              flagResolver,
+              resolveCache,
+              applyFlushInterval == null
+                  ? null
+                  : new FlagApplierImpl(flagResolver, applyFlushInterval),
+              resolveHistory,
+              metrics);
       final EventSenderEngine eventSenderEngine =
-          new EventSenderEngineImpl(clientSecret, DEFAULT_CHANNEL, Instant::now);
+          new EventSenderEngineImpl(
+              new GrpcEventUploader(
+                  clientSecret, Instant::now, DEFAULT_CHANNEL, eventCompression, metrics),
+              Instant::now,
+              eventUploadTargetLatency == null
+                  ? EventBatchSize.fixed(eventBatchMaxEvents, eventBatchMaxBytes)
+                  : EventBatchSize.adaptive(
+                      1, eventBatchMaxEvents, eventBatchMaxBytes, eventUploadTargetLatency),
+              maxInFlightEventUploads,
+              eventSpillDirectory == null
+                  ? null
+                  : openEventSpillQueue(eventSpillDirectory, eventSpillMaxBytes),
+              metrics);
       closer.register(flagResolverClient);
+      if (snapshotFile != null) {
+        // registered after the client, so that the snapshot is written before it is closed
+        final Path file = snapshotFile;
+        final Map<ResolveKey, ResolveHistory.Entry> resolves = resolveHistory.asMap();
+        closer.register(() -> writeSnapshot(file, resolves));
+      }
       closer.register(eventSenderEngine);
       return new RootInstance(new ClientDelegate(closer, flagResolverClient, eventSenderEngine));
     }
 
+    private static Map<ResolveKey, ResolveHistory.Entry> readSnapshot(Path file) {
+      try {
+        final Map<ResolveKey, ResolveHistory.Entry> snapshot = ResolveSnapshot.read(file);
+        log.debug("Read {} resolves from snapshot {}", snapshot.size(), file);
+        return snapshot;
+      } catch (IOException e) {
+        log.warn("Failed to read snapshot {}", file, e);
+        return Map.of();
+      }
+    }
+
+    @Nullable
+    private static EventSpillQueue openEventSpillQueue(Path directory, long maxBytes) {
+      try {
+        return EventSpillQueue.open(directory, EventSpillQueue.DEFAULT_MAX_SEGMENT_BYTES, maxBytes);
+      } catch (IOException e) {
+        log.warn(
+            "Failed to open event spill queue in {}, events won't be kept on disk", directory, e);
+        return null;
+      }
+    }
+
+    private static void writeSnapshot(Path file, Map<ResolveKey, ResolveHistory.Entry> resolves) {
+      try {
+        ResolveSnapshot.write(file, resolves);
+      } catch (IOException e) {
+        log.warn("Failed to write snapshot {}", file, e);
+      }
+    }
+
     private void registerChannelForShutdown(ManagedChannel channel) {
       this.closer.register(
           () -> {
@@ -0,0 +1,76 @@
+package com.spotify.confidence;
+
+import io.grpc.Status;
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Receives measurements of resolves and event uploads, to be reported by a metrics library. The
+ * {@code sdk-java-micrometer} and {@code sdk-java-opentelemetry} modules provide implementations.
+ *
+ * <p>All methods have empty defaults, so that implementations can report a subset. Methods are
+ * called on resolve and upload paths, from any thread, and should not block.
+ */
+public interface ConfidenceMetrics {
+
+  /** Metrics that discard all measurements, used unless metrics are configured. */
+  ConfidenceMetrics NOOP = new ConfidenceMetrics() {};
+
+  /**
+   * Called when a resolve request to the backend completes.
+   *
+   * @param latency the time from sending the request to receiving the response or error
+   * @param status {@link Status.Code#OK}, or the status of the failed request
+   */
+  default void resolveCompleted(Duration latency, Status.Code status) {}
+
+  /**
+   * Called when a resolve is looked up in the resolve cache, if one is configured.
+   *
+   * @param hit whether the resolve was served from the cache, without a request to the backend
+   */
+  default void resolveCacheLookup(boolean hit) {}
+
+  /**
+   * Called when a request that uploads events completes. Failed uploads are retried, and each
+   * attempt is reported.
+   *
+   * @param events the number of events in the request
+   * @param latency the time from sending the request to receiving the response or error
+   * @param status {@link Status.Code#OK}, or the status of the failed request
+   */
+  default void eventUploadCompleted(int events, Duration latency, Status.Code status) {}
+
+  /**
+   * Called when events are dropped, because the event queue was over its memory limit, the uploads
+   * kept failing or the client was closed, and the events couldn't be kept in the spill queue
+   * either.
+   */
+  default void eventsDropped(int events) {}
+
+  /**
+   * Called once when the event queue is created, with suppliers of its current state to be reported
+   * as gauges. The event queue closes the returned registration when it is closed, after which the
+   * suppliers must no longer be referenced.
+   *
+   * @param pendingEvents the number of events that are queued or being uploaded
+   * @param estimatedMemoryBytes the estimated memory held by those events
+   * @return a registration that stops reporting the gauges when closed
+   */
+  default Registration registerEventQueue(
+      LongSupplier pendingEvents, LongSupplier estimatedMemoryBytes) {
+    return Registration.NOOP;
+  }
+
+  /** Gauges registered by {@link #registerEventQueue(LongSupplier, LongSupplier)}. */
+  interface Registration extends Closeable {
+
+    /** A registration with nothing to close. */
+    Registration NOOP = () -> {};
+
+    /** Stops reporting the registered gauges. */
+    @Override
+    void close();
+  }
+}
@@ -4,6 +4,8 @@ import com.google.protobuf.Struct;
 import com.spotify.confidence.Exceptions.IllegalValueType;
 import com.spotify.confidence.Exceptions.IncompatibleValueType;
 import com.spotify.confidence.Exceptions.ParseError;
+import com.spotify.confidence.Exceptions.ValueNotFound;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolvedFlag;
 import com.spotify.confidence.shaded.flags.types.v1.FlagSchema;
 import com.spotify.confidence.shaded.flags.types.v1.FlagSchema.SchemaTypeCase;
 import com.spotify.confidence.shaded.flags.types.v1.FlagSchema.StructFlagSchema;
@@ -102,6 +104,146 @@ class ConfidenceTypeMapper {
     return ConfidenceValue.Struct.ofMap(map);
   }
 
+  /**
+   * Returns the value of a resolved flag at a path, decoding only the fields along the path instead
+   * of the full value, as {@link #from(Struct, StructFlagSchema)} does.
+   *
+   * @throws ValueNotFound if the path doesn't exist in the flag value
+   * @throws ParseError if the value along the path doesn't match its schema
+   */
+  static ConfidenceValue from(ResolvedFlag resolvedFlag, List<String> path) throws ValueNotFound {
+    return from(resolvedFlag.getValue(), resolvedFlag.getFlagSchema(), path);
+  }
+
+  private static ConfidenceValue from(Struct struct, StructFlagSchema schema, List<String> path)
+      throws ValueNotFound {
+    if (path.isEmpty()) {
+      return from(struct, schema);
+    }
+    Struct structValue = struct;
+    StructFlagSchema structSchema = schema;
+    for (int i = 0; ; i++) {
+      final String fieldName = path.get(i);
+      final com.google.protobuf.Value fieldValue = structValue.getFieldsMap().get(fieldName);
+      if (fieldValue == null) {
+        throw new ValueNotFound(
+            String.format(
+                "Illegal attempt to derive non-existing field '%s' on structure value '%s'",
+                fieldName, from(structValue, structSchema)));
+      }
+      final FlagSchema fieldSchema = structSchema.getSchemaMap().get(fieldName);
+      if (fieldSchema == null) {
+        throw new ParseError(String.format("Lacking schema for field '%s'", fieldName));
+      }
+      if (i == path.size() - 1) {
+        return from(fieldValue, fieldSchema);
+      }
+      if (fieldValue.getKindCase() != com.google.protobuf.Value.KindCase.STRUCT_VALUE
+          || fieldSchema.getSchemaTypeCase() != SchemaTypeCase.STRUCT_SCHEMA) {
+        // decoding fails on a schema mismatch, otherwise the value isn't a structure
+        throw new ValueNotFound(
+            String.format(
+                "Illegal attempt to derive field '%s' on non-structure value '%s'",
+                path.get(i + 1), from(fieldValue, fieldSchema)));
+      }
+      structValue = fieldValue.getStructValue();
+      structSchema = fieldSchema.getStructSchema();
+    }
+  }
+
+  /** Converts a non-null flag value to a type, see {@link #reader(Class)}. */
+  @FunctionalInterface
+  interface ValueReader<T> {
+    T read(ConfidenceValue value) throws IllegalValueType, IncompatibleValueType;
+  }
+
+  /**
+   * Returns a reader for values of the given type, so that the type is checked once instead of on
+   * every evaluation as in {@link #getTyped(ConfidenceValue, Object)}.
+   *
+   * @throws IllegalValueType if the type isn't one of the types supported by {@link
+   *     #getTyped(ConfidenceValue, Object)}
+   */
+  static <T> ValueReader<T> reader(Class<T> type) throws IllegalValueType {
+    if (type == String.class) {
+      return value -> {
+        if (value.isString()) {
+          return type.cast(value.asString());
+        }
+        throw incompatibleValueType(type, value);
+      };
+    } else if (type == Integer.class) {
+      return value -> {
+        if (value.isInteger()) {
+          return type.cast(value.asInteger());
+        }
+        throw incompatibleValueType(type, value);
+      };
+    } else if (type == Double.class) {
+      return value -> {
+        if (value.isDouble()) {
+          return type.cast(value.asDouble());
+        }
+        throw incompatibleValueType(type, value);
+      };
+    } else if (type == Boolean.class) {
+      return value -> {
+        if (value.isBoolean()) {
+          return type.cast(value.asBoolean());
+        }
+        throw incompatibleValueType(type, value);
+      };
+    } else if (type == ConfidenceValue.List.class) {
+      return value -> {
+        if (value.isList()) {
+          return type.cast(value.asList());
+        }
+        throw incompatibleValueType(type, value);
+      };
+    } else if (type == ConfidenceValue.Struct.class) {
+      return value -> {
+        if (value.isStruct()) {
+          return type.cast(value.asStruct());
+        }
+        throw incompatibleValueType(type, value);
+      };
+    }
+    throw new IllegalValueType(String.format("Illegal value type: %s", type));
+  }
+
+  /**
+   * Readers that check the type of a value without unwrapping it, so that the primitive getters of
+   * {@link Confidence} don't box the value.
+   */
+  static final ValueReader<ConfidenceValue> BOOLEAN_VALUE =
+      value -> {
+        if (value.isBoolean()) {
+          return value;
+        }
+        throw incompatibleValueType(boolean.class, value);
+      };
+
+  static final ValueReader<ConfidenceValue> INT_VALUE =
+      value -> {
+        if (value.isInteger()) {
+          return value;
+        }
+        throw incompatibleValueType(int.class, value);
+      };
+
+  static final ValueReader<ConfidenceValue> DOUBLE_VALUE =
+      value -> {
+        if (value.isDouble()) {
+          return value;
+        }
+        throw incompatibleValueType(double.class, value);
+      };
+
+  private static IncompatibleValueType incompatibleValueType(Class<?> type, ConfidenceValue value) {
+    return new IncompatibleValueType(
+        String.format("Default type %s, but value of type %s", type, value.getClass()));
+  }
+
   public static <T> T getTyped(ConfidenceValue value, T defaultValue)
       throws IllegalValueType, IncompatibleValueType {
     if (value.equals(ConfidenceValue.NULL_VALUE)) {
@@ -1,13 +1,10 @@
 package com.spotify.confidence;
 
-import com.spotify.confidence.ConfidenceValue.Struct;
 import com.spotify.confidence.Exceptions.IllegalValuePath;
-import com.spotify.confidence.Exceptions.ValueNotFound;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
-import java.util.regex.Pattern;
 import org.slf4j.Logger;
 
 final class ConfidenceUtils {
@@ -16,40 +13,6 @@ final class ConfidenceUtils {
 
   private static final Logger log = org.slf4j.LoggerFactory.getLogger(ConfidenceUtils.class);
 
-  static ConfidenceValue getValueForPath(List<String> path, ConfidenceValue fullValue)
-      throws ValueNotFound {
-    ConfidenceValue value = fullValue;
-    for (String fieldName : path) {
-      final Struct structure = value.asStruct();
-      if (structure == null) {
-        // value's inner object actually is no structure
-        log.warn(
-            "Illegal attempt to derive field '{}' on non-structure value '{}'", fieldName, value);
-        throw new ValueNotFound(
-            String.format(
-                "Illegal attempt to derive field '%s' on non-structure value '%s'",
-                fieldName, value));
-      }
-
-      value = structure.get(fieldName);
-
-      if (value == null) {
-        // we know that null indicates absence of a proper value because intended nulls would be an
-        // instance of type Value
-        log.warn(
-            "Illegal attempt to derive non-existing field '{}' on structure value '{}'",
-            fieldName,
-            structure);
-        throw new ValueNotFound(
-            String.format(
-                "Illegal attempt to derive non-existing field '%s' on structure value '%s'",
-                fieldName, structure));
-      }
-    }
-
-    return value;
-  }
-
   static class FlagPath {
     private final String flag;
     private final List<String> path;
@@ -68,19 +31,31 @@ final class ConfidenceUtils {
     }
 
     public static FlagPath getPath(String str) throws IllegalValuePath {
-      final String regex = Pattern.quote(".");
-      final String[] parts = str.split(regex);
+      int end = str.indexOf('.');
+      if (end < 0) {
+        // str doesn't contain the delimiter
+        return new FlagPath(str, List.of());
+      }
+      final List<String> parts = new ArrayList<>();
+      int start = 0;
+      do {
+        parts.add(str.substring(start, end));
+        start = end + 1;
+        end = str.indexOf('.', start);
+      } while (end >= 0);
+      parts.add(str.substring(start));
+      // trailing delimiters are ignored, like String.split does
+      int size = parts.size();
+      while (size > 0 && parts.get(size - 1).isEmpty()) {
+        size--;
+      }
 
-      if (parts.length == 0) {
+      if (size == 0) {
         // this happens for malformed corner cases such as: str = "..."
         log.warn("Illegal path string '{}'", str);
         throw new IllegalValuePath(String.format("Illegal path string '%s'", str));
-      } else if (parts.length == 1) {
-        // str doesn't contain the delimiter
-        return new FlagPath(str, List.of());
-      } else {
-        return new FlagPath(parts[0], Arrays.asList(parts).subList(1, parts.length));
       }
+      return new FlagPath(parts.get(0), List.copyOf(parts.subList(1, size)));
     }
   }
 
@@ -8,8 +8,10 @@ import com.google.protobuf.ListValue;
 import com.google.protobuf.NullValue;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 @Beta
 public abstract class ConfidenceValue {
@@ -362,6 +364,8 @@ public abstract class ConfidenceValue {
 
   public static class List extends ConfidenceValue {
     private final ImmutableList<ConfidenceValue> values;
+    // lists are immutable, so the proto form is computed once and reused, also by hashCode/equals
+    @Nullable private volatile com.google.protobuf.Value proto;
 
     private List(java.util.List<ConfidenceValue> values) {
       this.values = ImmutableList.copyOf(values);
@@ -384,12 +388,17 @@ public abstract class ConfidenceValue {
 
     @Override
     public com.google.protobuf.Value toProto() {
-      final ListValue value =
-          ListValue.newBuilder()
-              .addAllValues(
-                  values.stream().map(ConfidenceValue::toProto).collect(Collectors.toList()))
-              .build();
-      return com.google.protobuf.Value.newBuilder().setListValue(value).build();
+      com.google.protobuf.Value proto = this.proto;
+      if (proto == null) {
+        final ListValue value =
+            ListValue.newBuilder()
+                .addAllValues(
+                    values.stream().map(ConfidenceValue::toProto).collect(Collectors.toList()))
+                .build();
+        proto = com.google.protobuf.Value.newBuilder().setListValue(value).build();
+        this.proto = proto;
+      }
+      return proto;
     }
 
     static List fromProto(ListValue list) {
@@ -403,6 +412,8 @@ public abstract class ConfidenceValue {
   public static class Struct extends ConfidenceValue {
     public static final Struct EMPTY = new Struct(ImmutableMap.of());
     private final ImmutableMap<String, ConfidenceValue> values;
+    // structs are immutable, so the proto form is computed once and reused, also by hashCode/equals
+    @Nullable private volatile com.google.protobuf.Value proto;
 
     protected Struct(Map<String, ConfidenceValue> values) {
       this.values = ImmutableMap.copyOf(values);
@@ -415,7 +426,7 @@ public abstract class ConfidenceValue {
 
     @Override
     public Struct asStruct() {
-      return new Struct(values);
+      return this;
     }
 
     public ConfidenceValue get(String... path) {
@@ -441,9 +452,14 @@ public abstract class ConfidenceValue {
 
     @Override
     public com.google.protobuf.Value toProto() {
-      final com.google.protobuf.Struct.Builder builder = com.google.protobuf.Struct.newBuilder();
-      values.forEach((key, value) -> builder.putFields(key, value.toProto()));
-      return com.google.protobuf.Value.newBuilder().setStructValue(builder).build();
+      com.google.protobuf.Value proto = this.proto;
+      if (proto == null) {
+        final com.google.protobuf.Struct.Builder builder = com.google.protobuf.Struct.newBuilder();
+        values.forEach((key, value) -> builder.putFields(key, value.toProto()));
+        proto = com.google.protobuf.Value.newBuilder().setStructValue(builder).build();
+        this.proto = proto;
+      }
+      return proto;
     }
 
     static Struct fromProto(com.google.protobuf.Struct struct) {
@@ -458,9 +474,9 @@ public abstract class ConfidenceValue {
       return values;
     }
 
+    /** Returns a mutable copy of the fields of this struct, converted to proto values. */
     public Map<String, com.google.protobuf.Value> asProtoMap() {
-      return values.entrySet().stream()
-          .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().toProto()));
+      return new HashMap<>(toProto().getStructValue().getFieldsMap());
     }
 
     public static final class Builder {
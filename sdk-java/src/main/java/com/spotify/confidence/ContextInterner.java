@@ -0,0 +1,68 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.Value;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares equal evaluation contexts between pending events, so that a context is kept in memory and
+ * counted towards the memory consumption once, however many events refer to it.
+ *
+ * <p>Contexts are reference counted: each {@link #retain(Value)} is to be matched by a {@link
+ * #release(Value)} once the event is no longer pending, and a context is forgotten when its last
+ * event is released.
+ */
+final class ContextInterner {
+
+  private final ConcurrentHashMap<Value, Entry> contexts = new ConcurrentHashMap<>();
+  private final AtomicLong retainedBytes = new AtomicLong();
+
+  /** Returns the shared instance of a context equal to the given one, and retains it. */
+  Value retain(Value context) {
+    final Entry entry =
+        contexts.compute(
+            context,
+            (key, existing) -> {
+              if (existing == null) {
+                retainedBytes.addAndGet(key.getSerializedSize());
+                return new Entry(key);
+              }
+              existing.references++;
+              return existing;
+            });
+    return entry.context;
+  }
+
+  /** Releases a context that was returned by {@link #retain(Value)}. */
+  void release(Value context) {
+    contexts.computeIfPresent(
+        context,
+        (key, entry) -> {
+          if (--entry.references > 0) {
+            return entry;
+          }
+          retainedBytes.addAndGet(-entry.context.getSerializedSize());
+          return null;
+        });
+  }
+
+  /** Returns the serialized size of all retained contexts, each counted once. */
+  long retainedBytes() {
+    return retainedBytes.get();
+  }
+
+  /** Returns the number of distinct retained contexts. */
+  int size() {
+    return contexts.size();
+  }
+
+  private static final class Entry {
+    private final Value context;
+    // only accessed within the map's compute functions, which are atomic per key
+    private int references = 1;
+
+    private Entry(Value context) {
+      this.context = context;
+    }
+  }
+}
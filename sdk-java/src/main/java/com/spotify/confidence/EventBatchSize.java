@@ -0,0 +1,81 @@
+package com.spotify.confidence;
+
+import java.time.Duration;
+import javax.annotation.Nullable;
+
+/**
+ * Limits the size of event batches by number of events and by serialized bytes.
+ *
+ * <p>With a target latency, the number of events per batch adapts to the observed upload latency:
+ * it is halved when an upload is slower than the target or fails, and grows by a quarter when an
+ * upload is faster, within {@code [minEvents, maxEvents]}. Without a target latency, batches are
+ * always filled to {@code maxEvents}.
+ */
+final class EventBatchSize {
+
+  private final int minEvents;
+  private final int maxEvents;
+  private final long maxBytes;
+  @Nullable private final Duration targetLatency;
+  private volatile int events;
+
+  private EventBatchSize(
+      int minEvents, int maxEvents, long maxBytes, @Nullable Duration targetLatency) {
+    if (minEvents <= 0 || maxEvents < minEvents) {
+      throw new IllegalArgumentException("maxEvents must be positive and at least minEvents");
+    }
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("maxBytes must be positive");
+    }
+    this.minEvents = minEvents;
+    this.maxEvents = maxEvents;
+    this.maxBytes = maxBytes;
+    this.targetLatency = targetLatency;
+    this.events = maxEvents;
+  }
+
+  static EventBatchSize fixed(int maxEvents, long maxBytes) {
+    return new EventBatchSize(maxEvents, maxEvents, maxBytes, null);
+  }
+
+  static EventBatchSize adaptive(
+      int minEvents, int maxEvents, long maxBytes, Duration targetLatency) {
+    if (targetLatency.isZero() || targetLatency.isNegative()) {
+      throw new IllegalArgumentException("targetLatency must be positive");
+    }
+    return new EventBatchSize(minEvents, maxEvents, maxBytes, targetLatency);
+  }
+
+  /** Returns the number of events at which a batch is uploaded. */
+  int maxEvents() {
+    return events;
+  }
+
+  /** Returns the number of serialized bytes a batch may not exceed, unless it is a single event. */
+  long maxBytes() {
+    return maxBytes;
+  }
+
+  /** Returns the largest number of events a batch can ever have. */
+  int upperBoundEvents() {
+    return maxEvents;
+  }
+
+  /**
+   * Adapts the batch size to the outcome of an upload attempt.
+   *
+   * @param latency the duration of the attempt
+   * @param succeeded whether the events were accepted, or the attempt is to be retried
+   */
+  synchronized void onUpload(Duration latency, boolean succeeded) {
+    if (targetLatency == null) {
+      return;
+    }
+    final int current = events;
+    if (succeeded && latency.compareTo(targetLatency) <= 0) {
+      events = Math.min(maxEvents, current + Math.max(1, current / 4));
+    } else {
+      events = Math.max(minEvents, current / 2);
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package com.spotify.confidence;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.Value;
 import com.spotify.confidence.events.v1.Event;
 import dev.failsafe.Failsafe;
 import dev.failsafe.FailsafeExecutor;
@@ -12,30 +13,63 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 
 class EventSenderEngineImpl implements EventSenderEngine {
 
   static final String EVENT_NAME_PREFIX = "eventDefinitions/";
   static final int DEFAULT_BATCH_SIZE = 25;
+  static final long DEFAULT_MAX_BATCH_BYTES = 1024 * 1024; // 1MB
+  static final int DEFAULT_MAX_IN_FLIGHT_UPLOADS = 32;
   static final Duration DEFAULT_MAX_FLUSH_INTERVAL = Duration.ofSeconds(60);
   static final long DEFAULT_MAX_MEMORY_CONSUMPTION = 1024 * 1024 * 1024; // 1GB
+  static final int DEFAULT_QUEUE_CAPACITY = 1 << 16;
   private static final Logger log = org.slf4j.LoggerFactory.getLogger(EventSenderEngineImpl.class);
   private final EventUploader eventUploader;
   private final Clock clock;
-  private final int maxBatchSize;
+  private final EventBatchSize batchSize;
   private final Duration maxFlushInterval;
   private final FailsafeExecutor<Boolean> uploadExecutor;
-  private final ConcurrentLinkedQueue<com.spotify.confidence.events.v1.Event> sendQueue =
-      new ConcurrentLinkedQueue<>();
-  private final Set<CompletableFuture<?>> pendingBatches = ConcurrentHashMap.newKeySet();
+  private final RingBuffer<Event> sendQueue;
+  private final Set<PendingBatch> pendingBatches = ConcurrentHashMap.newKeySet();
+  private final Semaphore uploadPermits;
+  // batches waiting for an upload permit, only added and started by the polling thread
+  private final Queue<WaitingBatch> waitingBatches = new ConcurrentLinkedQueue<>();
   private final Thread pollingThread = new Thread(this::pollLoop);
   private final long maxMemoryConsumption;
+  @Nullable private final EventSpillQueue spillQueue;
+  // events that emit couldn't keep in memory, written to the spill queue by the spill writer
+  private final BlockingQueue<Event> spillOverflow;
+  @Nullable private final ExecutorService spillWriter;
+  private final AtomicBoolean spillWriteScheduled = new AtomicBoolean(false);
+  private final ConfidenceMetrics metrics;
+  private final ConfidenceMetrics.Registration metricsRegistration;
+  // set by the polling thread while it waits for a full batch, a flush or the flush interval
+  private final AtomicBoolean pollingThreadParked = new AtomicBoolean(false);
+  private final AtomicBoolean flushRequested = new AtomicBoolean(false);
   private volatile boolean intakeClosed = false;
   private volatile boolean joinWasInterrupted = false;
-  private final AtomicLong estimatedMemoryConsumption = new AtomicLong(0);
+  // serialized size of the pending events, without their contexts, which are counted once by the
+  // interner however many pending events share them
+  private final AtomicLong pendingEventBytes = new AtomicLong(0);
+  private final AtomicLong pendingEventCount = new AtomicLong(0);
+  private final ContextInterner contexts = new ContextInterner();
+  // serialized size of the events in the send queue
+  private final AtomicLong queuedBytes = new AtomicLong(0);
+  // the batch being filled, only accessed by the polling thread
+  private List<Event> batch = new ArrayList<>();
+  private long batchBytes = 0;
+  private Instant latestFlushTime = Instant.now();
+  // a segment of the spill queue is uploaded at a time, and not before this time while uploads fail
+  private volatile boolean drainingSpillQueue = false;
+  private volatile Instant nextSpillQueueDrain = Instant.MIN;
 
   @VisibleForTesting
   EventSenderEngineImpl(
@@ -44,14 +78,110 @@ class EventSenderEngineImpl implements EventSenderEngine {
       Clock clock,
       Duration maxFlushInterval,
       long maxMemoryConsumption) {
+    this(
+        maxBatchSize,
+        eventUploader,
+        clock,
+        maxFlushInterval,
+        maxMemoryConsumption,
+        DEFAULT_QUEUE_CAPACITY);
+  }
+
+  @VisibleForTesting
+  EventSenderEngineImpl(
+      int maxBatchSize,
+      EventUploader eventUploader,
+      Clock clock,
+      Duration maxFlushInterval,
+      long maxMemoryConsumption,
+      int queueCapacity) {
+    this(
+        EventBatchSize.fixed(maxBatchSize, DEFAULT_MAX_BATCH_BYTES),
+        DEFAULT_MAX_IN_FLIGHT_UPLOADS,
+        eventUploader,
+        clock,
+        maxFlushInterval,
+        maxMemoryConsumption,
+        queueCapacity,
+        null);
+  }
+
+  /**
+   * @param batchSize limits the number of events and bytes per uploaded batch
+   * @param maxInFlightUploads the number of batches that may be uploading at the same time. Once
+   *     reached, new batches wait in memory for an upload to complete.
+   * @param queueCapacity the number of events that can be queued for the polling thread, raised to
+   *     at least twice the batch size. Events emitted into a full queue are spilled or dropped.
+   * @param spillQueue where events are kept when they exceed the memory consumption, couldn't be
+   *     uploaded or are still pending on close, to be uploaded once uploads succeed again
+   */
+  @VisibleForTesting
+  EventSenderEngineImpl(
+      EventBatchSize batchSize,
+      int maxInFlightUploads,
+      EventUploader eventUploader,
+      Clock clock,
+      Duration maxFlushInterval,
+      long maxMemoryConsumption,
+      int queueCapacity,
+      @Nullable EventSpillQueue spillQueue) {
+    this(
+        batchSize,
+        maxInFlightUploads,
+        eventUploader,
+        clock,
+        maxFlushInterval,
+        maxMemoryConsumption,
+        queueCapacity,
+        spillQueue,
+        ConfidenceMetrics.NOOP);
+  }
+
+  /**
+   * @param batchSize limits the number of events and bytes per uploaded batch
+   * @param maxInFlightUploads the number of batches that may be uploading at the same time. Once
+   *     reached, new batches wait in memory for an upload to complete.
+   * @param queueCapacity the number of events that can be queued for the polling thread, raised to
+   *     at least twice the batch size. Events emitted into a full queue are spilled or dropped.
+   * @param spillQueue where events are kept when they exceed the memory consumption, couldn't be
+   *     uploaded or are still pending on close, to be uploaded once uploads succeed again
+   * @param metrics receives the state of the queue and the number of dropped events
+   */
+  EventSenderEngineImpl(
+      EventBatchSize batchSize,
+      int maxInFlightUploads,
+      EventUploader eventUploader,
+      Clock clock,
+      Duration maxFlushInterval,
+      long maxMemoryConsumption,
+      int queueCapacity,
+      @Nullable EventSpillQueue spillQueue,
+      ConfidenceMetrics metrics) {
     if (maxFlushInterval.isZero()) {
       throw new IllegalArgumentException("maxFlushInterval must be positive");
     }
+    if (maxInFlightUploads <= 0) {
+      throw new IllegalArgumentException("maxInFlightUploads must be positive");
+    }
+    this.sendQueue = new RingBuffer<>(Math.max(queueCapacity, 2 * batchSize.upperBoundEvents()));
+    this.uploadPermits = new Semaphore(maxInFlightUploads);
     this.eventUploader = eventUploader;
     this.clock = clock;
-    this.maxBatchSize = maxBatchSize;
+    this.batchSize = batchSize;
     this.maxFlushInterval = maxFlushInterval;
     this.maxMemoryConsumption = maxMemoryConsumption;
+    this.spillQueue = spillQueue;
+    this.spillOverflow = new ArrayBlockingQueue<>(Math.max(queueCapacity, 1));
+    this.spillWriter =
+        spillQueue == null
+            ? null
+            : Executors.newSingleThreadExecutor(
+                runnable -> {
+                  final Thread thread = new Thread(runnable, "confidence-event-spill-writer");
+                  thread.setDaemon(true);
+                  return thread;
+                });
+    this.metrics = metrics;
     uploadExecutor =
         Failsafe.with(
             RetryPolicy.<Boolean>builder()
@@ -61,16 +191,38 @@ class EventSenderEngineImpl implements EventSenderEngine {
                 .withMaxAttempts(-1)
                 .withMaxDuration(Duration.ofMinutes(30))
                 .build());
+    metricsRegistration =
+        metrics.registerEventQueue(pendingEventCount::get, this::getEstimatedMemoryConsumption);
     pollingThread.start();
   }
 
   EventSenderEngineImpl(String clientSecret, ManagedChannel channel, Clock clock) {
     this(
-        DEFAULT_BATCH_SIZE,
         new GrpcEventUploader(clientSecret, clock, channel),
         clock,
+        EventBatchSize.fixed(DEFAULT_BATCH_SIZE, DEFAULT_MAX_BATCH_BYTES),
+        DEFAULT_MAX_IN_FLIGHT_UPLOADS,
+        null,
+        ConfidenceMetrics.NOOP);
+  }
+
+  EventSenderEngineImpl(
+      EventUploader eventUploader,
+      Clock clock,
+      EventBatchSize batchSize,
+      int maxInFlightUploads,
+      @Nullable EventSpillQueue spillQueue,
+      ConfidenceMetrics metrics) {
+    this(
+        batchSize,
+        maxInFlightUploads,
+        eventUploader,
+        clock,
         DEFAULT_MAX_FLUSH_INTERVAL,
-        DEFAULT_MAX_MEMORY_CONSUMPTION);
+        DEFAULT_MAX_MEMORY_CONSUMPTION,
+        DEFAULT_QUEUE_CAPACITY,
+        spillQueue,
+        metrics);
   }
 
   @Override
@@ -78,82 +230,332 @@ class EventSenderEngineImpl implements EventSenderEngine {
       String name, ConfidenceValue.Struct context, Optional<ConfidenceValue.Struct> data) {
     if (intakeClosed) {
       log.warn("EventSenderEngine is closed, dropping event {}", name);
+      metrics.eventsDropped(1);
       return;
     }
+    final Value sharedContext = contexts.retain(context.toProto());
     final Event event =
-        EventUploader.event(name, context, data).setEventTime(clock.getTimestamp()).build();
-    if (estimatedMemoryConsumption.get() + event.getSerializedSize() > maxMemoryConsumption) {
-      log.warn("EventSenderEngine is overloaded, dropping event {}", name);
+        EventUploader.event(name, sharedContext, data).setEventTime(clock.getTimestamp()).build();
+    final long eventBytes = pendingBytes(event);
+    if (getEstimatedMemoryConsumption() + eventBytes > maxMemoryConsumption) {
+      contexts.release(sharedContext);
+      spillOrDrop(event, "EventSenderEngine is overloaded, dropping event {}", name);
+      return;
+    }
+    pendingEventBytes.addAndGet(eventBytes);
+    pendingEventCount.incrementAndGet();
+    if (!sendQueue.offer(event)) {
+      // emitting never waits for the polling thread to catch up
+      release(event);
+      wakePollingThread();
+      spillOrDrop(event, "EventSenderEngine queue is full, dropping event {}", name);
+      return;
+    }
+    // the polling thread is only woken once there is a full batch for it to upload
+    if (queuedBytes.addAndGet(event.getSerializedSize()) >= batchSize.maxBytes()
+        || sendQueue.size() >= batchSize.maxEvents()) {
+      wakePollingThread();
+    }
+  }
+
+  /**
+   * Hands an event that emit can't keep in memory to the spill writer, so that the caller doesn't
+   * wait for the disk, or drops it when there is no spill queue or the spill writer is behind.
+   */
+  private void spillOrDrop(Event event, String dropMessage, String name) {
+    if (spillQueue != null && spillOverflow.offer(event)) {
+      if (spillWriteScheduled.compareAndSet(false, true)) {
+        try {
+          spillWriter.execute(this::writeSpillOverflow);
+        } catch (RejectedExecutionException e) {
+          // closing, and close already wrote what was left, unless the event is gone by now
+          if (spillOverflow.remove(event)) {
+            log.warn(dropMessage, name);
+            metrics.eventsDropped(1);
+          }
+        }
+      }
       return;
     }
-    sendQueue.add(event);
-    estimatedMemoryConsumption.addAndGet(event.getSerializedSize());
-    LockSupport.unpark(pollingThread);
+    log.warn(dropMessage, name);
+    metrics.eventsDropped(1);
+  }
+
+  private void writeSpillOverflow() {
+    // reset first, so that events offered after the drain below schedule another write
+    spillWriteScheduled.set(false);
+    final List<Event> events = new ArrayList<>();
+    spillOverflow.drainTo(events);
+    if (!events.isEmpty() && !spillQueue.append(events)) {
+      log.warn("Spill queue is full, dropping {} events", events.size());
+      metrics.eventsDropped(events.size());
+    }
   }
 
   @Override
   public void flush() {
-    sendQueue.add(Event.newBuilder().setEventDefinition("manual_flash").build());
-    LockSupport.unpark(pollingThread);
+    flushRequested.set(true);
+    wakePollingThread();
+  }
+
+  private void wakePollingThread() {
+    if (pollingThreadParked.get() && pollingThreadParked.compareAndSet(true, false)) {
+      LockSupport.unpark(pollingThread);
+    }
   }
 
   private void pollLoop() {
-    Instant latestFlushTime = Instant.now();
-    ArrayList<com.spotify.confidence.events.v1.Event> events = new ArrayList<>();
     while (true) {
-      final var event = sendQueue.poll();
-      if (event != null) {
-        if ("manual_flash".equals(event.getEventDefinition())) {
+      // events emitted before a flush or close are queued by now, so the drain below includes them
+      final boolean flush = flushRequested.getAndSet(false);
+      final boolean closing = intakeClosed;
+      while (sendQueue.drain(this::addToBatch, batchSize.upperBoundEvents()) > 0) {}
+      startWaitingBatches();
+      if (isSpillQueueDrainDue()) {
+        drainSpillQueue();
+      }
+
+      final boolean passedMaxFlushInterval =
+          Duration.between(latestFlushTime, Instant.now()).compareTo(maxFlushInterval) >= 0;
+      if (flush || closing || passedMaxFlushInterval) {
+        if (flush) {
           log.debug("Starting events upload due to manual flush");
-          upload(events);
-          events = new ArrayList<>();
-          continue;
-        } else {
-          events.add(event);
         }
-      } else {
-        if (intakeClosed) break;
-        LockSupport.parkUntil(Instant.now().plus(maxFlushInterval).toEpochMilli());
+        uploadBatch();
       }
-      final boolean passedMaxFlushInterval =
-          !maxFlushInterval.isZero()
-              && Duration.between(latestFlushTime, Instant.now()).compareTo(maxFlushInterval) > 0;
-      if (events.size() == maxBatchSize || passedMaxFlushInterval) {
-        upload(events);
-        events = new ArrayList<>();
-        latestFlushTime = Instant.now();
+      if (closing) break;
+
+      pollingThreadParked.set(true);
+      // producers only wake a parked polling thread, so the conditions are checked again after
+      // announcing it, to not miss a wakeup that happened in between
+      if (sendQueue.size() < batchSize.maxEvents()
+          && queuedBytes.get() < batchSize.maxBytes()
+          && !flushRequested.get()
+          && !intakeClosed
+          && !isSpillQueueDrainDue()
+          && (waitingBatches.isEmpty() || uploadPermits.availablePermits() == 0)) {
+        LockSupport.parkUntil(latestFlushTime.plus(maxFlushInterval).toEpochMilli());
+      }
+      pollingThreadParked.set(false);
+    }
+  }
+
+  private void addToBatch(Event event) {
+    final int eventSize = event.getSerializedSize();
+    queuedBytes.addAndGet(-eventSize);
+    if (!batch.isEmpty() && batchBytes + eventSize > batchSize.maxBytes()) {
+      uploadBatch();
+    }
+    batch.add(event);
+    batchBytes += eventSize;
+    if (batch.size() >= batchSize.maxEvents()) {
+      uploadBatch();
+    }
+  }
+
+  private void uploadBatch() {
+    if (!batch.isEmpty()) {
+      final List<Event> events = batch;
+      waitingBatches.add(
+          new WaitingBatch(
+              events,
+              uploaded -> {
+                if (!uploaded) {
+                  spill(events);
+                }
+                events.forEach(this::release);
+                // released memory can make room for spilled events
+                if (isSpillQueueDrainDue()) {
+                  wakePollingThread();
+                }
+              }));
+      batch = new ArrayList<>();
+      batchBytes = 0;
+      startWaitingBatches();
+    }
+    latestFlushTime = Instant.now();
+  }
+
+  /**
+   * Starts uploading waiting batches while fewer than the maximum number of uploads are in flight.
+   * The polling thread never waits for a permit, the remaining batches are started when an upload
+   * completes. Their events still count towards the memory consumption, so while uploads are slow
+   * {@link #emit} spills or drops new events once the limit is reached. On close, the remaining
+   * batches are started without a permit, since close only waits a limited time for them.
+   */
+  private void startWaitingBatches() {
+    WaitingBatch waiting;
+    while ((waiting = waitingBatches.peek()) != null) {
+      final boolean permit = uploadPermits.tryAcquire();
+      if (!permit && !intakeClosed) {
+        return;
+      }
+      waitingBatches.poll();
+      upload(waiting.events, permit, waiting.onCompleted);
+    }
+  }
+
+  private boolean isSpillQueueDrainDue() {
+    return spillQueue != null
+        && !drainingSpillQueue
+        && !intakeClosed
+        && !Instant.now().isBefore(nextSpillQueueDrain)
+        // spilled events are only uploaded when there is a permit for them, and new events go first
+        && waitingBatches.isEmpty()
+        && uploadPermits.availablePermits() > 0
+        // spilled events are only read back once the pending events take little memory
+        && getEstimatedMemoryConsumption() <= maxMemoryConsumption / 2
+        && !spillQueue.isEmpty();
+  }
+
+  /**
+   * Uploads the oldest segment of the spill queue, and removes it once all of its events are
+   * uploaded. Otherwise the whole segment is uploaded again later, possibly by another process.
+   */
+  private void drainSpillQueue() {
+    final Optional<EventSpillQueue.Segment> segment = spillQueue.oldest();
+    if (segment.isEmpty()) {
+      return;
+    }
+    final List<List<Event>> batches = partition(segment.get().events());
+    if (batches.isEmpty()) {
+      spillQueue.remove(segment.get());
+      return;
+    }
+    log.debug("Uploading {} events from the spill queue", segment.get().events().size());
+    drainingSpillQueue = true;
+    final AtomicInteger remaining = new AtomicInteger(batches.size());
+    final AtomicBoolean allUploaded = new AtomicBoolean(true);
+    for (List<Event> events : batches) {
+      waitingBatches.add(
+          new WaitingBatch(
+              events,
+              uploaded -> {
+                if (!uploaded) {
+                  allUploaded.set(false);
+                }
+                if (remaining.decrementAndGet() > 0) {
+                  return;
+                }
+                if (allUploaded.get()) {
+                  spillQueue.remove(segment.get());
+                } else {
+                  nextSpillQueueDrain = Instant.now().plus(maxFlushInterval);
+                }
+                drainingSpillQueue = false;
+                wakePollingThread();
+              }));
+    }
+    startWaitingBatches();
+  }
+
+  /** Splits events into batches within the limits of the batch size. */
+  private List<List<Event>> partition(List<Event> events) {
+    final List<List<Event>> batches = new ArrayList<>();
+    List<Event> current = new ArrayList<>();
+    long currentBytes = 0;
+    for (Event event : events) {
+      final int eventSize = event.getSerializedSize();
+      if (!current.isEmpty()
+          && (current.size() >= batchSize.maxEvents()
+              || currentBytes + eventSize > batchSize.maxBytes())) {
+        batches.add(current);
+        current = new ArrayList<>();
+        currentBytes = 0;
       }
+      current.add(event);
+      currentBytes += eventSize;
+    }
+    if (!current.isEmpty()) {
+      batches.add(current);
+    }
+    return batches;
+  }
+
+  /** Keeps events that weren't uploaded in the spill queue, if there is one, or drops them. */
+  private void spill(List<Event> events) {
+    if (spillQueue == null) {
+      metrics.eventsDropped(events.size());
+    } else if (spillQueue.append(events)) {
+      log.info("Kept {} events that were not uploaded in the spill queue", events.size());
+    } else {
+      log.warn("Spill queue is full, dropping {} events", events.size());
+      metrics.eventsDropped(events.size());
     }
-    upload(events);
   }
 
-  private void upload(List<com.spotify.confidence.events.v1.Event> events) {
-    if (events.isEmpty()) return;
+  /**
+   * Uploads a batch of events, retrying failed attempts.
+   *
+   * @param onCompleted called once with whether the events were uploaded, at the latest when the
+   *     batch is cancelled on close
+   */
+  private void upload(List<Event> events, boolean releasePermit, Consumer<Boolean> onCompleted) {
+    // the batch is registered before its upload starts, so that close can always cancel it
+    final PendingBatch batch = new PendingBatch(onCompleted);
+    pendingBatches.add(batch);
     final CompletableFuture<Boolean> batchUploaded =
         uploadExecutor.getStageAsync(
             () -> {
-              // we don't want to upload if the thread was interrupted on close
-              if (joinWasInterrupted) {
-                return CompletableFuture.completedFuture(true);
+              // we don't want to upload if the thread was interrupted on close. A null result is
+              // not retried, and marks the events as not uploaded.
+              if (joinWasInterrupted || batch.cancelled) {
+                return CompletableFuture.completedFuture(null);
               }
-              return eventUploader.upload(events);
+              final long start = System.nanoTime();
+              return batch
+                  .attempt(() -> eventUploader.upload(events))
+                  .whenComplete(
+                      (uploaded, throwable) -> {
+                        final boolean succeeded =
+                            throwable == null && Boolean.TRUE.equals(uploaded);
+                        batchSize.onUpload(Duration.ofNanos(System.nanoTime() - start), succeeded);
+                        onUploadAttempt(succeeded);
+                      });
             });
-    pendingBatches.add(batchUploaded);
+    batch.uploaded(batchUploaded);
     batchUploaded.whenComplete(
         (res, err) -> {
           // Errors from this is logged by the uploader
-          pendingBatches.remove(batchUploaded);
-          estimatedMemoryConsumption.addAndGet(
-              -events.stream().mapToLong(Event::getSerializedSize).sum());
+          batch.completed(err == null && Boolean.TRUE.equals(res));
+          pendingBatches.remove(batch);
+          if (releasePermit) {
+            uploadPermits.release();
+            if (!waitingBatches.isEmpty()) {
+              wakePollingThread();
+            }
+          }
         });
   }
 
+  /** Drains the spill queue once uploads succeed, and holds off while they fail. */
+  private void onUploadAttempt(boolean succeeded) {
+    if (spillQueue != null) {
+      nextSpillQueueDrain = succeeded ? Instant.MIN : Instant.now().plus(maxFlushInterval);
+    }
+  }
+
+  /** Returns the memory held by a pending event, apart from its shared context. */
+  private static long pendingBytes(Event event) {
+    return event.getSerializedSize() - context(event).getSerializedSize();
+  }
+
+  private static Value context(Event event) {
+    return event.getPayload().getFieldsOrThrow(EventUploader.CONTEXT_KEY);
+  }
+
+  private void release(Event event) {
+    pendingEventBytes.addAndGet(-pendingBytes(event));
+    pendingEventCount.decrementAndGet();
+    contexts.release(context(event));
+  }
+
   private void joinPollingThread() {
     try {
       LockSupport.unpark(pollingThread);
       pollingThread.join();
     } catch (InterruptedException e) {
-      sendQueue.clear();
+      // the polling thread drains what is left, but the uploads are skipped
       joinWasInterrupted = true;
       Thread.currentThread().interrupt();
     }
@@ -163,6 +565,8 @@ class EventSenderEngineImpl implements EventSenderEngine {
     try {
       final CompletableFuture<?>[] pending =
           pendingBatches.stream()
+              .map(batch -> batch.uploaded)
+              .filter(Objects::nonNull)
               .map(future -> future.exceptionally(throwable -> null))
               .toArray(CompletableFuture[]::new);
       CompletableFuture.allOf(pending).get(10, TimeUnit.SECONDS);
@@ -175,7 +579,12 @@ class EventSenderEngineImpl implements EventSenderEngine {
 
   @VisibleForTesting
   long getEstimatedMemoryConsumption() {
-    return estimatedMemoryConsumption.get();
+    return pendingEventBytes.get() + contexts.retainedBytes();
+  }
+
+  @VisibleForTesting
+  int getPendingContextCount() {
+    return contexts.size();
   }
 
   @Override
@@ -185,9 +594,94 @@ class EventSenderEngineImpl implements EventSenderEngine {
     joinPollingThread();
     awaitPending();
 
-    pendingBatches.forEach(
-        batch -> {
-          batch.cancel(true);
-        });
+    // cancelled batches are kept in the spill queue, so it is closed after them
+    pendingBatches.forEach(PendingBatch::cancel);
+    if (spillQueue != null) {
+      closeSpillWriter();
+      spillQueue.close();
+    }
+    metricsRegistration.close();
+  }
+
+  private void closeSpillWriter() {
+    spillWriter.shutdown();
+    try {
+      spillWriter.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      // reset the interrupt status
+      Thread.currentThread().interrupt();
+    }
+    // events that the spill writer didn't get to are written here
+    writeSpillOverflow();
+  }
+
+  /** A batch of events waiting for an upload permit. */
+  private static final class WaitingBatch {
+    private final List<Event> events;
+    private final Consumer<Boolean> onCompleted;
+
+    WaitingBatch(List<Event> events, Consumer<Boolean> onCompleted) {
+      this.events = events;
+      this.onCompleted = onCompleted;
+    }
+  }
+
+  /**
+   * An uploaded batch of events, tracking both the retrying upload and its current attempt. An
+   * attempt is started under the same lock as cancellation, so that cancelling reaches an attempt
+   * that is being started before {@link #cancel()} returns, and the batch is completed by then.
+   */
+  private static final class PendingBatch {
+    private final Consumer<Boolean> onCompleted;
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+    @Nullable private CompletableFuture<Boolean> uploaded;
+    @Nullable private CompletableFuture<Boolean> attempt;
+    private volatile boolean cancelled = false;
+
+    PendingBatch(Consumer<Boolean> onCompleted) {
+      this.onCompleted = onCompleted;
+    }
+
+    void uploaded(CompletableFuture<Boolean> uploaded) {
+      synchronized (this) {
+        this.uploaded = uploaded;
+      }
+      if (cancelled) {
+        uploaded.cancel(true);
+      }
+    }
+
+    synchronized CompletableFuture<Boolean> attempt(Supplier<CompletableFuture<Boolean>> upload) {
+      if (cancelled) {
+        return CompletableFuture.completedFuture(null);
+      }
+      attempt = upload.get();
+      return attempt;
+    }
+
+    void cancel() {
+      final CompletableFuture<Boolean> currentAttempt;
+      final CompletableFuture<Boolean> currentUpload;
+      synchronized (this) {
+        cancelled = true;
+        currentAttempt = attempt;
+        currentUpload = uploaded;
+      }
+      // the futures are cancelled without holding the lock, since their completion takes locks of
+      // its own
+      if (currentAttempt != null) {
+        currentAttempt.cancel(true);
+      }
+      if (currentUpload != null) {
+        currentUpload.cancel(true);
+      }
+      completed(false);
+    }
+
+    void completed(boolean uploaded) {
+      if (completed.compareAndSet(false, true)) {
+        onCompleted.accept(uploaded);
+      }
+    }
   }
 }
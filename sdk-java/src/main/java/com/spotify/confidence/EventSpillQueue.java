@@ -0,0 +1,273 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.spotify.confidence.events.v1.Event;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+
+/**
+ * A queue of events on disk, for events that can't be kept in memory or couldn't be uploaded.
+ *
+ * <p>Events are appended to segment files in a directory. A segment file starts with a format
+ * version, followed by length-delimited {@link Event} messages, and is named after its sequence
+ * number, so that segments are read in the order they were written, also by a later process.
+ * Segments are read whole by memory-mapping the file, and are deleted once their events have been
+ * uploaded.
+ */
+final class EventSpillQueue implements Closeable {
+
+  static final int VERSION = 1;
+  static final long DEFAULT_MAX_SEGMENT_BYTES = 1024 * 1024; // 1MB
+  private static final String SEGMENT_SUFFIX = ".events";
+  private static final Logger log = org.slf4j.LoggerFactory.getLogger(EventSpillQueue.class);
+
+  private final Path directory;
+  private final long maxSegmentBytes;
+  private final long maxBytes;
+  // segments that are complete, oldest first, followed by the one being written to, if any
+  private final Deque<Path> segments = new ArrayDeque<>();
+  private long sizeBytes = 0;
+  private long nextSequence = 0;
+  // a stream rather than a channel, since channels are closed when the writing thread is
+  // interrupted, and events are kept when a thread that is interrupted closes the engine
+  @Nullable private FileOutputStream writeStream;
+  private long writeSegmentBytes = 0;
+  private boolean closed = false;
+
+  private EventSpillQueue(Path directory, long maxSegmentBytes, long maxBytes) {
+    this.directory = directory;
+    this.maxSegmentBytes = maxSegmentBytes;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Opens the queue in a directory, with the segments left by a previous process.
+   *
+   * @param directory the directory of the segment files, created if it doesn't exist
+   * @param maxSegmentBytes the size at which a new segment is started, which bounds the number of
+   *     bytes read at once
+   * @param maxBytes the maximum total size of the segments, beyond which events are dropped
+   */
+  static EventSpillQueue open(Path directory, long maxSegmentBytes, long maxBytes)
+      throws IOException {
+    if (maxSegmentBytes <= 0 || maxBytes < maxSegmentBytes) {
+      throw new IllegalArgumentException(
+          "maxSegmentBytes must be positive and maxBytes at least maxSegmentBytes");
+    }
+    Files.createDirectories(directory);
+    final EventSpillQueue queue = new EventSpillQueue(directory, maxSegmentBytes, maxBytes);
+    final List<Path> existing = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+      files.forEach(existing::add);
+    }
+    Collections.sort(existing);
+    for (Path segment : existing) {
+      final long sequence = sequence(segment);
+      if (sequence < 0) {
+        continue;
+      }
+      queue.segments.add(segment);
+      queue.sizeBytes += Files.size(segment);
+      queue.nextSequence = Math.max(queue.nextSequence, sequence + 1);
+    }
+    return queue;
+  }
+
+  /**
+   * Appends events to the newest segment.
+   *
+   * @return whether the events were written, which they are not when the queue is full or the write
+   *     fails
+   */
+  synchronized boolean append(List<Event> events) {
+    final byte[] bytes;
+    try {
+      bytes = encode(events);
+    } catch (IOException e) {
+      log.warn("Failed to encode {} events for the spill queue", events.size(), e);
+      return false;
+    }
+    if (sizeBytes + bytes.length > maxBytes) {
+      return false;
+    }
+    try {
+      if (writeStream == null || writeSegmentBytes + bytes.length > maxSegmentBytes) {
+        startSegment();
+      }
+      writeStream.write(bytes);
+      writeSegmentBytes += bytes.length;
+      sizeBytes += bytes.length;
+      if (closed) {
+        // events of uploads that complete after close are still kept, in a segment of their own
+        sealSegment();
+      }
+      return true;
+    } catch (IOException e) {
+      log.warn("Failed to write {} events to the spill queue in {}", events.size(), directory, e);
+      sealSegment();
+      return false;
+    }
+  }
+
+  /**
+   * Reads the oldest segment. The segment stays in the queue until it is {@linkplain
+   * #remove(Segment) removed}, and is read again by a later process if it isn't. If the oldest
+   * segment is the one being written to, no more events are appended to it.
+   *
+   * @return the oldest segment, or empty if the queue is empty
+   */
+  synchronized Optional<Segment> oldest() {
+    while (!segments.isEmpty()) {
+      final Path file = segments.peekFirst();
+      if (segments.size() == 1 && writeStream != null) {
+        sealSegment();
+      }
+      try {
+        return Optional.of(new Segment(file, read(file)));
+      } catch (IOException e) {
+        log.warn("Dropping unreadable spill queue segment {}", file, e);
+        remove(file);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /** Removes a segment, once its events have been uploaded. */
+  synchronized void remove(Segment segment) {
+    remove(segment.file);
+  }
+
+  private void remove(Path file) {
+    if (!segments.remove(file)) {
+      return;
+    }
+    try {
+      sizeBytes -= Files.size(file);
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      log.warn("Failed to delete spill queue segment {}", file, e);
+    }
+  }
+
+  synchronized boolean isEmpty() {
+    return segments.isEmpty();
+  }
+
+  /** Returns the total size of the segments on disk. */
+  synchronized long sizeBytes() {
+    return sizeBytes;
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    sealSegment();
+  }
+
+  private void startSegment() throws IOException {
+    sealSegment();
+    final Path file = directory.resolve(String.format("%020d%s", nextSequence++, SEGMENT_SUFFIX));
+    writeStream = new FileOutputStream(file.toFile());
+    segments.addLast(file);
+    final byte[] header = new byte[CodedOutputStream.computeUInt32SizeNoTag(VERSION)];
+    CodedOutputStream.newInstance(header).writeUInt32NoTag(VERSION);
+    writeStream.write(header);
+    writeSegmentBytes = header.length;
+    sizeBytes += header.length;
+  }
+
+  private void sealSegment() {
+    if (writeStream == null) {
+      return;
+    }
+    try (FileOutputStream stream = writeStream) {
+      stream.getFD().sync();
+    } catch (IOException e) {
+      log.warn("Failed to close spill queue segment in {}", directory, e);
+    }
+    writeStream = null;
+  }
+
+  private static byte[] encode(List<Event> events) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+    for (Event event : events) {
+      output.writeMessageNoTag(event);
+    }
+    output.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Reads the events of a segment by memory-mapping the file. A segment that ends with a partially
+   * written event, as left by a process that stopped while writing, is read up to that event.
+   */
+  private static List<Event> read(Path file) throws IOException {
+    final List<Event> events = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() == 0) {
+        return events;
+      }
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      final CodedInputStream input = CodedInputStream.newInstance(buffer);
+      final int version = input.readUInt32();
+      if (version != VERSION) {
+        throw new IOException(String.format("Unsupported spill queue version %d", version));
+      }
+      while (!input.isAtEnd()) {
+        final int position = input.getTotalBytesRead();
+        try {
+          final Event.Builder event = Event.newBuilder();
+          input.readMessage(event, ExtensionRegistryLite.getEmptyRegistry());
+          events.add(event.build());
+        } catch (IOException e) {
+          log.warn("Spill queue segment {} is truncated at byte {}", file, position);
+          break;
+        }
+      }
+    }
+    return events;
+  }
+
+  private static long sequence(Path segment) {
+    final String name = segment.getFileName().toString();
+    try {
+      return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /** The events of a segment that was read from disk. */
+  static final class Segment {
+    private final Path file;
+    private final List<Event> events;
+
+    private Segment(Path file, List<Event> events) {
+      this.file = file;
+      this.events = events;
+    }
+
+    List<Event> events() {
+      return events;
+    }
+  }
+}
@@ -1,24 +1,32 @@
 package com.spotify.confidence;
 
 import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
 import com.spotify.confidence.events.v1.Event;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 interface EventUploader {
+  String CONTEXT_KEY = "context";
+
   static Event.Builder event(
       String name, ConfidenceValue.Struct context, Optional<ConfidenceValue.Struct> data) {
-    final Map<String, ConfidenceValue> map = new HashMap<>(Map.of());
-    final ConfidenceValue.Struct dataStruct = data.orElse(ConfidenceValue.Struct.EMPTY);
-    map.putAll(dataStruct.asMap());
-    map.put("context", context);
+    return event(name, context.toProto(), data);
+  }
 
+  /**
+   * @param context the protobuf form of the evaluation context, which is put into the payload as
+   *     is, so that events can share the same instance
+   */
+  static Event.Builder event(String name, Value context, Optional<ConfidenceValue.Struct> data) {
+    final ConfidenceValue.Struct dataStruct = data.orElse(ConfidenceValue.Struct.EMPTY);
     return Event.newBuilder()
         .setEventDefinition(EventSenderEngineImpl.EVENT_NAME_PREFIX + name)
-        .setPayload(Struct.newBuilder().putAllFields(ConfidenceValue.of(map).asProtoMap()));
+        .setPayload(
+            Struct.newBuilder()
+                .putAllFields(dataStruct.toProto().getStructValue().getFieldsMap())
+                .putFields(CONTEXT_KEY, context));
   }
 
   CompletableFuture<Boolean> upload(List<Event> events);
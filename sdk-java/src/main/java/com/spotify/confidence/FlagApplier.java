@@ -0,0 +1,17 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.ByteString;
+import java.io.Closeable;
+
+interface FlagApplier extends Closeable {
+  /**
+   * Records that a flag from a resolve made with {@code apply=false} has been used, so that the
+   * exposure can be reported to the backend.
+   *
+   * @param flag the resolved flag name, e.g. "flags/my-flag"
+   * @param resolveToken the resolve token of the response the flag was part of
+   */
+  void apply(String flag, ByteString resolveToken);
+
+  void flush();
+}
@@ -0,0 +1,148 @@
+package com.spotify.confidence;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.ByteString;
+import com.spotify.confidence.shaded.flags.resolver.v1.AppliedFlag;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import org.slf4j.Logger;
+
+/**
+ * Collects applied flags in memory and sends them in the background, with one ApplyFlags request
+ * per resolve token. Pending flags are sent every flush interval, or earlier when more than the max
+ * batch size of them are waiting.
+ */
+class FlagApplierImpl implements FlagApplier {
+
+  static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+  static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(10);
+  private static final Logger log = org.slf4j.LoggerFactory.getLogger(FlagApplierImpl.class);
+
+  private final BiFunction<ByteString, List<AppliedFlag>, CompletableFuture<?>> applyFlags;
+  private final Clock clock;
+  private final int maxBatchSize;
+  private final ScheduledExecutorService executor;
+  private final Map<ByteString, Map<String, AppliedFlag>> pending = new ConcurrentHashMap<>();
+  private final AtomicInteger pendingCount = new AtomicInteger();
+  private final Set<CompletableFuture<?>> pendingRequests = ConcurrentHashMap.newKeySet();
+  private volatile boolean closed = false;
+
+  /**
+   * @param applyFlags sends the applied flags of one resolve token to the backend
+   */
+  @VisibleForTesting
+  FlagApplierImpl(
+      BiFunction<ByteString, List<AppliedFlag>, CompletableFuture<?>> applyFlags,
+      Clock clock,
+      int maxBatchSize,
+      Duration flushInterval) {
+    if (flushInterval.isZero() || flushInterval.isNegative()) {
+      throw new IllegalArgumentException("flushInterval must be positive");
+    }
+    this.applyFlags = applyFlags;
+    this.clock = clock;
+    this.maxBatchSize = maxBatchSize;
+    this.executor =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              final Thread thread = new Thread(runnable, "confidence-flag-applier");
+              thread.setDaemon(true);
+              return thread;
+            });
+    executor.scheduleWithFixedDelay(
+        this::flush, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  FlagApplierImpl(GrpcFlagResolver flagResolver, Duration flushInterval) {
+    this(flagResolver::applyFlags, Instant::now, DEFAULT_MAX_BATCH_SIZE, flushInterval);
+  }
+
+  @Override
+  public void apply(String flag, ByteString resolveToken) {
+    if (closed) {
+      log.warn("FlagApplier is closed, dropping apply of {}", flag);
+      return;
+    }
+    final AppliedFlag appliedFlag =
+        AppliedFlag.newBuilder().setFlag(flag).setApplyTime(clock.getTimestamp()).build();
+    pending.compute(
+        resolveToken,
+        (token, flags) -> {
+          final Map<String, AppliedFlag> tokenFlags = flags == null ? new LinkedHashMap<>() : flags;
+          // the first apply of a flag is the exposure, later ones add no information
+          if (tokenFlags.putIfAbsent(flag, appliedFlag) == null) {
+            pendingCount.incrementAndGet();
+          }
+          return tokenFlags;
+        });
+    if (pendingCount.get() >= maxBatchSize) {
+      try {
+        executor.execute(this::flush);
+      } catch (RejectedExecutionException e) {
+        // closed after the check above, and the final flush may already have run
+        log.warn("FlagApplier is closed, dropping apply of {}", flag);
+      }
+    }
+  }
+
+  @Override
+  public synchronized void flush() {
+    for (ByteString resolveToken : List.copyOf(pending.keySet())) {
+      final Map<String, AppliedFlag> flags = pending.remove(resolveToken);
+      if (flags == null || flags.isEmpty()) continue;
+      pendingCount.addAndGet(-flags.size());
+      send(resolveToken, new ArrayList<>(flags.values()));
+    }
+  }
+
+  private void send(ByteString resolveToken, List<AppliedFlag> flags) {
+    final CompletableFuture<?> request;
+    try {
+      request = applyFlags.apply(resolveToken, flags);
+    } catch (RuntimeException e) {
+      log.warn("Failed to apply {} flags", flags.size(), e);
+      return;
+    }
+    pendingRequests.add(request);
+    request.whenComplete(
+        (response, throwable) -> {
+          pendingRequests.remove(request);
+          if (throwable != null) {
+            log.warn("Failed to apply {} flags: {}", flags.size(), throwable.getMessage());
+          }
+        });
+  }
+
+  @Override
+  public void close() {
+    if (closed) return;
+    closed = true;
+    executor.shutdown();
+    flush();
+    try {
+      CompletableFuture.allOf(
+              pendingRequests.stream()
+                  .map(request -> request.exceptionally(throwable -> null))
+                  .toArray(CompletableFuture[]::new))
+          .get(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException ignored) {
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.spotify.confidence;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.spotify.confidence.ConfidenceTypeMapper.ValueReader;
+import com.spotify.confidence.ConfidenceUtils.FlagPath;
+import com.spotify.confidence.Exceptions.IllegalValuePath;
+import com.spotify.confidence.Exceptions.IllegalValueType;
+import java.util.Objects;
+
+/**
+ * A typed handle to a flag, optionally followed by a path into the flag value, created with {@link
+ * Confidence#flag(String, Class)}.
+ *
+ * <p>The key is parsed and the type is checked once when the handle is created, instead of on every
+ * evaluation. Handles are immutable and interned, so they are cheap to keep in constants:
+ *
+ * <pre>{@code
+ * private static final FlagKey<String> BUTTON_COLOR =
+ *     Confidence.flag("checkout.button.color", String.class);
+ *
+ * final String color = confidence.getValue(BUTTON_COLOR, "green");
+ * }</pre>
+ *
+ * @param <T> the type of the flag value at the path
+ */
+public final class FlagKey<T> {
+
+  private static final Interner<FlagKey<?>> INTERNER = Interners.newWeakInterner();
+
+  private final String key;
+  private final Class<T> type;
+  private final FlagPath flagPath;
+  private final String requestFlagName;
+  private final ValueReader<T> reader;
+
+  private FlagKey(String key, Class<T> type, FlagPath flagPath, ValueReader<T> reader) {
+    this.key = key;
+    this.type = type;
+    this.flagPath = flagPath;
+    this.requestFlagName = "flags/" + flagPath.getFlag();
+    this.reader = reader;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T> FlagKey<T> of(String key, Class<T> type) {
+    try {
+      return (FlagKey<T>)
+          INTERNER.intern(
+              new FlagKey<>(key, type, FlagPath.getPath(key), ConfidenceTypeMapper.reader(type)));
+    } catch (IllegalValuePath | IllegalValueType e) {
+      throw new IllegalArgumentException(e.getMessage(), e);
+    }
+  }
+
+  /** The flag name, optionally followed by a path into the flag value. */
+  public String getKey() {
+    return key;
+  }
+
+  public Class<T> getType() {
+    return type;
+  }
+
+  FlagPath flagPath() {
+    return flagPath;
+  }
+
+  String requestFlagName() {
+    return requestFlagName;
+  }
+
+  ValueReader<T> reader() {
+    return reader;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof FlagKey)) {
+      return false;
+    }
+    final FlagKey<?> other = (FlagKey<?>) o;
+    return key.equals(other.key) && type.equals(other.type);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(key, type);
+  }
+
+  @Override
+  public String toString() {
+    return "FlagKey{" + key + ", " + type.getSimpleName() + "}";
+  }
+}
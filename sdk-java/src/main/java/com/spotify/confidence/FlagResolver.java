@@ -2,11 +2,25 @@ package com.spotify.confidence;
 
 import com.google.protobuf.Struct;
 import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsResponse;
+import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 interface FlagResolver {
   void close();
 
   public CompletableFuture<ResolveFlagsResponse> resolve(
-      String flag, Struct context, Boolean isProvider);
+      List<String> flags, Struct context, Boolean isProvider);
+
+  /**
+   * Resolves flags with a deadline for this request instead of the default one, which may be longer
+   * or shorter. Resolvers that can't set a deadline per request fail the resolve with a {@link
+   * java.util.concurrent.TimeoutException} once the deadline has passed.
+   */
+  default CompletableFuture<ResolveFlagsResponse> resolve(
+      List<String> flags, Struct context, Boolean isProvider, Duration deadline) {
+    return resolve(flags, context, isProvider)
+        .orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS);
+  }
 }
@@ -1,10 +1,78 @@
 package com.spotify.confidence;
 
+import com.google.common.cache.CacheStats;
+import com.google.protobuf.ByteString;
+import com.spotify.confidence.Exceptions.ValueNotFound;
 import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsResponse;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolvedFlag;
 import java.io.Closeable;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 interface FlagResolverClient extends Closeable {
   CompletableFuture<ResolveFlagsResponse> resolveFlags(
-      String flag, ConfidenceValue.Struct context, Boolean isProvider);
+      List<String> flags, ConfidenceValue.Struct context, Boolean isProvider);
+
+  /**
+   * Resolves flags like {@link #resolveFlags(List, ConfidenceValue.Struct, Boolean)}, with a
+   * deadline for this call instead of the configured resolve deadline. A resolve request sent for
+   * this call gets the deadline, which may be longer or shorter than the configured one. A call
+   * that is served by a request that is already in flight waits at most the deadline for it, and
+   * fails with a {@link java.util.concurrent.TimeoutException} after that, while the request keeps
+   * its own deadline.
+   */
+  default CompletableFuture<ResolveFlagsResponse> resolveFlags(
+      List<String> flags, ConfidenceValue.Struct context, Boolean isProvider, Duration deadline) {
+    // without control over the requests, a call can only stop waiting for its resolve
+    return resolveFlags(flags, context, isProvider)
+        .copy()
+        .orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Resolves the given flags from the backend even if a cached response exists, and updates the
+   * cache with the result. Used to keep prefetched flags up to date.
+   */
+  default CompletableFuture<ResolveFlagsResponse> refreshFlags(
+      List<String> flags, ConfidenceValue.Struct context, Boolean isProvider) {
+    return resolveFlags(flags, context, isProvider);
+  }
+
+  /**
+   * Reports the exposure of a flag that was resolved without being applied. Does nothing when flags
+   * are applied as part of the resolve.
+   */
+  default void apply(String flag, ByteString resolveToken) {}
+
+  /**
+   * Returns the value of a resolved flag at a path, see {@link
+   * ConfidenceTypeMapper#from(ResolvedFlag, List)}.
+   *
+   * @throws ValueNotFound if the path doesn't exist in the flag value
+   */
+  default ConfidenceValue flagValue(ResolvedFlag resolvedFlag, List<String> path)
+      throws ValueNotFound {
+    return ConfidenceTypeMapper.from(resolvedFlag, path);
+  }
+
+  /** Whether flags are resolved without being applied, and applied with {@link #apply}. */
+  default boolean defersApply() {
+    return false;
+  }
+
+  /**
+   * Returns the last successful resolve of the given flags in the given context, to be served while
+   * the backend is unavailable or slow. Empty when no resolve history is kept.
+   */
+  default Optional<ResolveFlagsResponse> lastKnownResolve(
+      List<String> flags, ConfidenceValue.Struct context, Boolean isProvider) {
+    return Optional.empty();
+  }
+
+  default Optional<CacheStats> resolveCacheStats() {
+    return Optional.empty();
+  }
 }
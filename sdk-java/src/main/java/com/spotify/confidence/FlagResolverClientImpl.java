@@ -1,35 +1,294 @@
 package com.spotify.confidence;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.Struct;
 import com.google.protobuf.Value;
+import com.spotify.confidence.Exceptions.ValueNotFound;
 import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsResponse;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolvedFlag;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 class FlagResolverClientImpl implements FlagResolverClient {
   public static final String OPEN_FEATURE_RESOLVE_CONTEXT_KEY = "open-feature";
   private final FlagResolver grpcFlagResolver;
+  @Nullable private final Cache<ResolveKey, ResolveFlagsResponse> resolveCache;
+  @Nullable private final FlagApplier flagApplier;
+  @Nullable private final ResolveHistory resolveHistory;
+  // values decoded from cached resolves, kept for as long as the resolve cache references them
+  @Nullable private final Cache<ResolvedFlag, Map<List<String>, ConfidenceValue>> decodedValues;
+  private final ConfidenceMetrics metrics;
+  private final Map<ResolveKey, CompletableFuture<ResolveFlagsResponse>> inFlightResolves =
+      new ConcurrentHashMap<>();
 
   public FlagResolverClientImpl(FlagResolver grpcFlagResolver) {
+    this(grpcFlagResolver, null, null);
+  }
+
+  /**
+   * @param resolveCache optional cache of resolve responses, keyed by the requested flags, in any
+   *     order, and the evaluation context sent to the backend. The cache should record stats for
+   *     {@link #resolveCacheStats()} to report anything.
+   * @param flagApplier optional applier for flags resolved with {@code apply=false}
+   */
+  FlagResolverClientImpl(
+      FlagResolver grpcFlagResolver,
+      @Nullable Cache<ResolveKey, ResolveFlagsResponse> resolveCache,
+      @Nullable FlagApplier flagApplier) {
+    this(grpcFlagResolver, resolveCache, flagApplier, null);
+  }
+
+  /**
+   * @param resolveCache optional cache of resolve responses, keyed by the requested flags, in any
+   *     order, and the evaluation context sent to the backend. The cache should record stats for
+   *     {@link #resolveCacheStats()} to report anything.
+   * @param flagApplier optional applier for flags resolved with {@code apply=false}
+   * @param resolveHistory optional store of the last successful resolve per key, served by {@link
+   *     #lastKnownResolve(List, ConfidenceValue.Struct, Boolean)} when the backend is unavailable
+   */
+  FlagResolverClientImpl(
+      FlagResolver grpcFlagResolver,
+      @Nullable Cache<ResolveKey, ResolveFlagsResponse> resolveCache,
+      @Nullable FlagApplier flagApplier,
+      @Nullable ResolveHistory resolveHistory) {
+    this(grpcFlagResolver, resolveCache, flagApplier, resolveHistory, ConfidenceMetrics.NOOP);
+  }
+
+  /**
+   * @param resolveCache optional cache of resolve responses, keyed by the requested flags, in any
+   *     order, and the evaluation context sent to the backend. The cache should record stats for
+   *     {@link #resolveCacheStats()} to report anything.
+   * @param flagApplier optional applier for flags resolved with {@code apply=false}
+   * @param resolveHistory optional store of the last successful resolve per key, served by {@link
+   *     #lastKnownResolve(List, ConfidenceValue.Struct, Boolean)} when the backend is unavailable
+   * @param metrics receives the outcome of resolve cache lookups
+   */
+  FlagResolverClientImpl(
+      FlagResolver grpcFlagResolver,
+      @Nullable Cache<ResolveKey, ResolveFlagsResponse> resolveCache,
+      @Nullable FlagApplier flagApplier,
+      @Nullable ResolveHistory resolveHistory,
+      ConfidenceMetrics metrics) {
     this.grpcFlagResolver = grpcFlagResolver;
+    this.resolveCache = resolveCache;
+    this.decodedValues = resolveCache == null ? null : CacheBuilder.newBuilder().weakKeys().build();
+    this.flagApplier = flagApplier;
+    this.resolveHistory = resolveHistory;
+    this.metrics = metrics;
+  }
+
+  public CompletableFuture<ResolveFlagsResponse> resolveFlags(
+      List<String> flagNames, ConfidenceValue.Struct context, Boolean isProvider) {
+    return resolveFlags(flagNames, context, isProvider, true, null);
   }
 
+  @Override
   public CompletableFuture<ResolveFlagsResponse> resolveFlags(
-      String flagName, ConfidenceValue.Struct context, Boolean isProvider) {
-    final Struct.Builder evaluationContextBuilder = context.toProto().getStructValue().toBuilder();
-    if (context.asMap().containsKey(OPEN_FEATURE_RESOLVE_CONTEXT_KEY)) {
-      final Value openFeatureEvaluationContext =
-          context.asMap().get(OPEN_FEATURE_RESOLVE_CONTEXT_KEY).toProto();
+      List<String> flagNames,
+      ConfidenceValue.Struct context,
+      Boolean isProvider,
+      Duration deadline) {
+    return resolveFlags(flagNames, context, isProvider, true, deadline);
+  }
+
+  @Override
+  public CompletableFuture<ResolveFlagsResponse> refreshFlags(
+      List<String> flagNames, ConfidenceValue.Struct context, Boolean isProvider) {
+    return resolveFlags(flagNames, context, isProvider, false, null);
+  }
+
+  /**
+   * @param deadline the deadline of a resolve request sent for this call, instead of the default
+   *     one. A call that joins a request in flight only waits this long for it.
+   */
+  private CompletableFuture<ResolveFlagsResponse> resolveFlags(
+      List<String> flagNames,
+      ConfidenceValue.Struct context,
+      Boolean isProvider,
+      boolean useCache,
+      @Nullable Duration deadline) {
+    final Struct evaluationContext = evaluationContext(context);
+
+    final ResolveKey key = new ResolveKey(flagNames, evaluationContext, isProvider);
+    if (useCache && resolveCache != null) {
+      final ResolveFlagsResponse cachedResponse = resolveCache.getIfPresent(key);
+      metrics.resolveCacheLookup(cachedResponse != null);
+      if (cachedResponse != null) {
+        return CompletableFuture.completedFuture(cachedResponse);
+      }
+    }
+
+    // concurrent identical resolves share the request that is already in flight
+    final CompletableFuture<ResolveFlagsResponse> resolve = new CompletableFuture<>();
+    final CompletableFuture<ResolveFlagsResponse> inFlightResolve =
+        inFlightResolves.putIfAbsent(key, resolve);
+    if (inFlightResolve != null) {
+      // the request in flight keeps its own deadline, so this call only stops waiting for it
+      return deadline == null
+          ? inFlightResolve.copy()
+          : inFlightResolve.copy().orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    try {
+      (deadline == null
+              ? grpcFlagResolver.resolve(flagNames, evaluationContext, isProvider)
+              : grpcFlagResolver.resolve(flagNames, evaluationContext, isProvider, deadline))
+          .whenComplete(
+              (response, throwable) -> {
+                if (throwable == null) {
+                  if (resolveCache != null) {
+                    resolveCache.put(key, response);
+                  }
+                  if (resolveHistory != null) {
+                    resolveHistory.put(key, response);
+                  }
+                }
+                inFlightResolves.remove(key, resolve);
+                if (throwable != null) {
+                  resolve.completeExceptionally(throwable);
+                } else {
+                  resolve.complete(response);
+                }
+              });
+    } catch (RuntimeException e) {
+      inFlightResolves.remove(key, resolve);
+      resolve.completeExceptionally(e);
+      throw e;
+    }
+    // callers get their own future, so that cancelling it doesn't affect other callers
+    return resolve.copy();
+  }
+
+  @Override
+  public Optional<ResolveFlagsResponse> lastKnownResolve(
+      List<String> flagNames, ConfidenceValue.Struct context, Boolean isProvider) {
+    if (resolveHistory == null) {
+      return Optional.empty();
+    }
+    return resolveHistory.get(new ResolveKey(flagNames, evaluationContext(context), isProvider));
+  }
+
+  /** Merges the OpenFeature evaluation context into the top level of the context. */
+  private static Struct evaluationContext(ConfidenceValue.Struct context) {
+    final ConfidenceValue openFeatureContext =
+        context.asMap().get(OPEN_FEATURE_RESOLVE_CONTEXT_KEY);
+    if (openFeatureContext == null) {
+      // the proto form is cached by the context, so there is nothing to build
+      return context.toProto().getStructValue();
+    }
+    final Value openFeatureEvaluationContext = openFeatureContext.toProto();
+    return context.toProto().getStructValue().toBuilder()
+        .putAllFields(openFeatureEvaluationContext.getStructValue().getFieldsMap())
+        .removeFields(OPEN_FEATURE_RESOLVE_CONTEXT_KEY)
+        .build();
+  }
 
-      evaluationContextBuilder.putAllFields(
-          openFeatureEvaluationContext.getStructValue().getFieldsMap());
-      evaluationContextBuilder.removeFields(OPEN_FEATURE_RESOLVE_CONTEXT_KEY);
+  @Override
+  public void apply(String flag, ByteString resolveToken) {
+    if (flagApplier != null) {
+      flagApplier.apply(flag, resolveToken);
+    }
+  }
+
+  /**
+   * Returns the value of a resolved flag at a path. With a resolve cache, decoded values are kept
+   * per resolved flag and path, so that repeated evaluations of a cached resolve don't decode
+   * again.
+   */
+  @Override
+  public ConfidenceValue flagValue(ResolvedFlag resolvedFlag, List<String> path)
+      throws ValueNotFound {
+    if (decodedValues == null) {
+      return ConfidenceTypeMapper.from(resolvedFlag, path);
+    }
+    final Map<List<String>, ConfidenceValue> values =
+        decodedValues.asMap().computeIfAbsent(resolvedFlag, flag -> new ConcurrentHashMap<>());
+    ConfidenceValue value = values.get(path);
+    if (value == null) {
+      value = ConfidenceTypeMapper.from(resolvedFlag, path);
+      values.put(path, value);
     }
+    return value;
+  }
 
-    return this.grpcFlagResolver.resolve(flagName, evaluationContextBuilder.build(), isProvider);
+  @Override
+  public boolean defersApply() {
+    return flagApplier != null;
   }
 
   @Override
-  public void close() {
-    this.grpcFlagResolver.close();
+  public Optional<CacheStats> resolveCacheStats() {
+    return Optional.ofNullable(resolveCache).map(Cache::stats);
+  }
+
+  @Override
+  public void close() throws IOException {
+    // pending applies need the resolver's channel, so they are sent before it's closed
+    try {
+      if (flagApplier != null) {
+        flagApplier.close();
+      }
+    } finally {
+      this.grpcFlagResolver.close();
+    }
+  }
+
+  /**
+   * Identifies a resolve request. Protobuf structs compare and hash their fields independently of
+   * insertion order, so equal evaluation contexts always map to the same key. The flag names are
+   * sorted, so that requests for the same flags in a different order share a key; responses are
+   * read by flag name, never by position.
+   *
+   * <p>A batch and a request for one of its flags remain separate keys: a response carries a single
+   * resolve token for all of its flags, so it can't be assembled from per-flag entries.
+   */
+  static final class ResolveKey {
+    private final List<String> flags;
+    private final Struct evaluationContext;
+    private final boolean isProvider;
+
+    ResolveKey(List<String> flags, Struct evaluationContext, boolean isProvider) {
+      this.flags = flags.stream().sorted().collect(Collectors.toUnmodifiableList());
+      this.evaluationContext = evaluationContext;
+      this.isProvider = isProvider;
+    }
+
+    List<String> flags() {
+      return flags;
+    }
+
+    Struct evaluationContext() {
+      return evaluationContext;
+    }
+
+    boolean isProvider() {
+      return isProvider;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof ResolveKey)) return false;
+      final ResolveKey that = (ResolveKey) o;
+      return isProvider == that.isProvider
+          && flags.equals(that.flags)
+          && evaluationContext.equals(that.evaluationContext);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(flags, evaluationContext, isProvider);
+    }
   }
 }
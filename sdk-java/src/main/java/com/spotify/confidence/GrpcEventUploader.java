@@ -6,13 +6,16 @@ import com.spotify.confidence.events.v1.EventsServiceGrpc;
 import com.spotify.confidence.events.v1.PublishEventsRequest;
 import com.spotify.confidence.events.v1.Sdk;
 import com.spotify.confidence.events.v1.SdkId;
+import io.grpc.CompressorRegistry;
 import io.grpc.ManagedChannel;
 import io.grpc.Status;
+import java.time.Duration;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 
 class GrpcEventUploader implements EventUploader {
@@ -31,14 +34,37 @@ class GrpcEventUploader implements EventUploader {
   private final ManagedChannel managedChannel;
   private final EventsServiceGrpc.EventsServiceFutureStub stub;
   private final Clock clock;
+  private final ConfidenceMetrics metrics;
 
   private static final Logger log = org.slf4j.LoggerFactory.getLogger(GrpcEventUploader.class);
 
   GrpcEventUploader(String clientSecret, Clock clock, ManagedChannel managedChannel) {
+    this(clientSecret, clock, managedChannel, null, ConfidenceMetrics.NOOP);
+  }
+
+  /**
+   * @param compression name of a compressor in the default {@link CompressorRegistry}, such as
+   *     {@code "gzip"}, to compress requests with, or null to send them uncompressed
+   * @param metrics receives the latency and status of upload requests
+   */
+  GrpcEventUploader(
+      String clientSecret,
+      Clock clock,
+      ManagedChannel managedChannel,
+      @Nullable String compression,
+      ConfidenceMetrics metrics) {
+    if (compression != null
+        && CompressorRegistry.getDefaultInstance().lookupCompressor(compression) == null) {
+      throw new IllegalArgumentException("Unknown compression: " + compression);
+    }
     this.clientSecret = clientSecret;
     this.managedChannel = managedChannel;
-    this.stub = EventsServiceGrpc.newFutureStub(managedChannel);
+    this.stub =
+        compression == null
+            ? EventsServiceGrpc.newFutureStub(managedChannel)
+            : EventsServiceGrpc.newFutureStub(managedChannel).withCompression(compression);
     this.clock = clock;
+    this.metrics = metrics;
     this.sdk =
         Sdk.newBuilder()
             .setId(SdkId.SDK_ID_JAVA_CONFIDENCE)
@@ -56,8 +82,15 @@ class GrpcEventUploader implements EventUploader {
             .addAllEvents(events)
             .build();
 
+    final long start = System.nanoTime();
     return GrpcUtil.toCompletableFuture(
             stub.withDeadlineAfter(5, TimeUnit.SECONDS).publishEvents(request))
+        .whenComplete(
+            (response, throwable) ->
+                metrics.eventUploadCompleted(
+                    events.size(),
+                    Duration.ofNanos(System.nanoTime() - start),
+                    throwable == null ? Status.Code.OK : Status.fromThrowable(throwable).getCode()))
         .thenApply(
             publishEventsResponse -> {
               final List<Event> eventsInRequest = request.getEventsList();
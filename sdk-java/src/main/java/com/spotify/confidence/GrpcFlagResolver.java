@@ -1,48 +1,117 @@
 package com.spotify.confidence;
 
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.Struct;
 import com.spotify.confidence.shaded.flags.resolver.v1.*;
 import com.spotify.confidence.shaded.flags.resolver.v1.Sdk.Builder;
 import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 public class GrpcFlagResolver implements FlagResolver {
+  static final Duration DEFAULT_RESOLVE_DEADLINE = Duration.ofSeconds(10);
   private final ManagedChannel managedChannel;
   private final String clientSecret;
+  private final boolean apply;
+  private final Duration resolveDeadline;
+  private final Executor callbackExecutor;
+  private final ConfidenceMetrics metrics;
   private final Builder sdkBuilder = Sdk.newBuilder().setVersion(ConfidenceUtils.getSdkVersion());
+  private final Clock clock = Instant::now;
 
   private final FlagResolverServiceGrpc.FlagResolverServiceFutureStub stub;
 
   public GrpcFlagResolver(String clientSecret, ManagedChannel managedChannel) {
+    this(
+        clientSecret,
+        managedChannel,
+        true,
+        DEFAULT_RESOLVE_DEADLINE,
+        MoreExecutors.directExecutor(),
+        ConfidenceMetrics.NOOP);
+  }
+
+  /**
+   * @param apply whether the backend should record flag exposures when resolving. When false,
+   *     exposures have to be reported with {@link #applyFlags(ByteString, List)}.
+   * @param resolveDeadline the deadline of resolve requests that aren't given their own
+   * @param callbackExecutor the executor that completes the futures of resolve and apply requests
+   * @param metrics receives the latency and status of resolve requests
+   */
+  GrpcFlagResolver(
+      String clientSecret,
+      ManagedChannel managedChannel,
+      boolean apply,
+      Duration resolveDeadline,
+      Executor callbackExecutor,
+      ConfidenceMetrics metrics) {
     if (Strings.isNullOrEmpty(clientSecret)) {
       throw new IllegalArgumentException("clientSecret must be a non-empty string.");
     }
     this.clientSecret = clientSecret;
     this.managedChannel = managedChannel;
+    this.apply = apply;
+    this.resolveDeadline = resolveDeadline;
+    this.callbackExecutor = callbackExecutor;
+    this.metrics = metrics;
     this.stub = FlagResolverServiceGrpc.newFutureStub(managedChannel);
   }
 
   public CompletableFuture<ResolveFlagsResponse> resolve(
-      String flag, Struct context, Boolean isProvider) {
+      List<String> flags, Struct context, Boolean isProvider) {
+    return resolve(flags, context, isProvider, resolveDeadline);
+  }
+
+  @Override
+  public CompletableFuture<ResolveFlagsResponse> resolve(
+      List<String> flags, Struct context, Boolean isProvider, Duration deadline) {
+    final long start = System.nanoTime();
+    final CompletableFuture<ResolveFlagsResponse> resolve =
+        GrpcUtil.toCompletableFuture(
+            stub.withDeadlineAfter(deadline.toMillis(), TimeUnit.MILLISECONDS)
+                .resolveFlags(
+                    ResolveFlagsRequest.newBuilder()
+                        .setClientSecret(this.clientSecret)
+                        .addAllFlags(flags)
+                        .setEvaluationContext(context)
+                        .setSdk(sdk(isProvider))
+                        .setApply(apply)
+                        .build()),
+            callbackExecutor);
+    resolve.whenComplete(
+        (response, throwable) ->
+            metrics.resolveCompleted(
+                Duration.ofNanos(System.nanoTime() - start),
+                throwable == null ? Status.Code.OK : Status.fromThrowable(throwable).getCode()));
+    return resolve;
+  }
+
+  CompletableFuture<ApplyFlagsResponse> applyFlags(
+      ByteString resolveToken, List<AppliedFlag> appliedFlags) {
     return GrpcUtil.toCompletableFuture(
         stub.withDeadlineAfter(10, TimeUnit.SECONDS)
-            .resolveFlags(
-                ResolveFlagsRequest.newBuilder()
+            .applyFlags(
+                ApplyFlagsRequest.newBuilder()
                     .setClientSecret(this.clientSecret)
-                    .addAllFlags(List.of(flag))
-                    .setEvaluationContext(context)
-                    .setSdk(
-                        sdkBuilder
-                            .setId(
-                                isProvider
-                                    ? SdkId.SDK_ID_JAVA_PROVIDER
-                                    : SdkId.SDK_ID_JAVA_CONFIDENCE)
-                            .build())
-                    .setApply(true)
-                    .build()));
+                    .setResolveToken(resolveToken)
+                    .addAllFlags(appliedFlags)
+                    .setSendTime(clock.getTimestamp())
+                    .setSdk(sdk(false))
+                    .build()),
+        callbackExecutor);
+  }
+
+  private synchronized Sdk sdk(boolean isProvider) {
+    return sdkBuilder
+        .setId(isProvider ? SdkId.SDK_ID_JAVA_PROVIDER : SdkId.SDK_ID_JAVA_CONFIDENCE)
+        .build();
   }
 
   public void close() {
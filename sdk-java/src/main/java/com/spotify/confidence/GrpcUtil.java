@@ -5,12 +5,22 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 final class GrpcUtil {
 
   private GrpcUtil() {}
 
   static <T> CompletableFuture<T> toCompletableFuture(final ListenableFuture<T> listenableFuture) {
+    return toCompletableFuture(listenableFuture, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * @param executor the executor that completes the returned future, and so runs its dependent
+   *     stages that don't specify an executor
+   */
+  static <T> CompletableFuture<T> toCompletableFuture(
+      final ListenableFuture<T> listenableFuture, final Executor executor) {
     final CompletableFuture<T> completableFuture =
         new CompletableFuture<>() {
           @Override
@@ -32,7 +42,7 @@ final class GrpcUtil {
             completableFuture.completeExceptionally(t);
           }
         },
-        MoreExecutors.directExecutor());
+        executor);
     return completableFuture;
   }
 }
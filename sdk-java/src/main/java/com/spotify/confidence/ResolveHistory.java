@@ -0,0 +1,107 @@
+package com.spotify.confidence;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.spotify.confidence.FlagResolverClientImpl.ResolveKey;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The last successful resolve per flags and evaluation context, served while the backend can't be
+ * reached.
+ *
+ * <p>Each resolve is kept with the time it was received, and is only served until it is older than
+ * the max staleness. Resolves restored from a snapshot keep their original resolve time, so that
+ * restoring them doesn't extend how long they are served.
+ */
+final class ResolveHistory {
+
+  private final Cache<ResolveKey, Entry> resolves;
+  private final Duration maxStaleness;
+  private final Clock clock;
+
+  ResolveHistory(long maximumSize, Duration maxStaleness, Clock clock) {
+    if (maxStaleness.isZero() || maxStaleness.isNegative()) {
+      throw new IllegalArgumentException("maxStaleness must be positive");
+    }
+    // entries expire at the latest max staleness after they were added, which bounds the memory
+    // held by entries that are no longer served; the age of each entry is checked when it is read
+    this.resolves =
+        CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(maxStaleness.toNanos(), TimeUnit.NANOSECONDS)
+            .build();
+    this.maxStaleness = maxStaleness;
+    this.clock = clock;
+  }
+
+  /** Remembers a resolve that was just received. */
+  void put(ResolveKey key, ResolveFlagsResponse response) {
+    resolves.put(key, new Entry(response, clock.get()));
+  }
+
+  /** Remembers a resolve that was received at the given time, unless it is already too old. */
+  void restore(ResolveKey key, Entry entry) {
+    if (!isStale(entry)) {
+      resolves.put(key, entry);
+    }
+  }
+
+  /** Returns the last resolve for the key, unless it is older than the max staleness. */
+  Optional<ResolveFlagsResponse> get(ResolveKey key) {
+    final Entry entry = resolves.getIfPresent(key);
+    if (entry == null || isStale(entry)) {
+      return Optional.empty();
+    }
+    return Optional.of(entry.response());
+  }
+
+  /** Returns a live view of the remembered resolves. */
+  Map<ResolveKey, Entry> asMap() {
+    return resolves.asMap();
+  }
+
+  private boolean isStale(Entry entry) {
+    return entry.resolveTime().plus(maxStaleness).isBefore(clock.get());
+  }
+
+  /** A resolve response and the time it was received. */
+  static final class Entry {
+    private final ResolveFlagsResponse response;
+    private final Instant resolveTime;
+
+    Entry(ResolveFlagsResponse response, Instant resolveTime) {
+      this.response = response;
+      this.resolveTime = resolveTime;
+    }
+
+    ResolveFlagsResponse response() {
+      return response;
+    }
+
+    Instant resolveTime() {
+      return resolveTime;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      final Entry other = (Entry) o;
+      return response.equals(other.response) && resolveTime.equals(other.resolveTime);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * response.hashCode() + resolveTime.hashCode();
+    }
+  }
+}
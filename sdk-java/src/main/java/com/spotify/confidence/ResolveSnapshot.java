@@ -0,0 +1,124 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.Timestamp;
+import com.spotify.confidence.FlagResolverClientImpl.ResolveKey;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsRequest;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsResponse;
+import com.spotify.confidence.shaded.flags.resolver.v1.Sdk;
+import com.spotify.confidence.shaded.flags.resolver.v1.SdkId;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads and writes snapshots of the resolve history, used to restore it on startup.
+ *
+ * <p>A snapshot file starts with a format version, followed by one length-delimited {@link
+ * ResolveFlagsRequest}, {@link ResolveFlagsResponse} and {@link Timestamp} message per resolve. The
+ * requests identify the resolved flags and evaluation context, and never contain the client secret.
+ * The timestamps are the times the resolves were received. Snapshots of other versions aren't read.
+ */
+final class ResolveSnapshot {
+
+  static final int VERSION = 2;
+
+  private ResolveSnapshot() {}
+
+  /**
+   * Reads a snapshot by memory-mapping the file.
+   *
+   * @return the resolves of the snapshot, or an empty map if the file doesn't exist
+   * @throws IOException if the file can't be read or isn't a valid snapshot
+   */
+  static Map<ResolveKey, ResolveHistory.Entry> read(Path file) throws IOException {
+    final Map<ResolveKey, ResolveHistory.Entry> resolves = new LinkedHashMap<>();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() == 0) {
+        return resolves;
+      }
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      final CodedInputStream input = CodedInputStream.newInstance(buffer);
+      final int version = input.readUInt32();
+      if (version != VERSION) {
+        throw new IOException(String.format("Unsupported snapshot version %d", version));
+      }
+      while (!input.isAtEnd()) {
+        final ResolveFlagsRequest.Builder request = ResolveFlagsRequest.newBuilder();
+        input.readMessage(request, ExtensionRegistryLite.getEmptyRegistry());
+        final ResolveFlagsResponse.Builder response = ResolveFlagsResponse.newBuilder();
+        input.readMessage(response, ExtensionRegistryLite.getEmptyRegistry());
+        final Timestamp.Builder resolveTime = Timestamp.newBuilder();
+        input.readMessage(resolveTime, ExtensionRegistryLite.getEmptyRegistry());
+        resolves.put(
+            new ResolveKey(
+                request.getFlagsList(),
+                request.getEvaluationContext(),
+                request.getSdk().getId() == SdkId.SDK_ID_JAVA_PROVIDER),
+            new ResolveHistory.Entry(
+                response.build(),
+                Instant.ofEpochSecond(resolveTime.getSeconds(), resolveTime.getNanos())));
+      }
+    } catch (NoSuchFileException e) {
+      return resolves;
+    }
+    return resolves;
+  }
+
+  /**
+   * Writes a snapshot to a temporary file next to the given file, and then moves it in place, so
+   * that readers never see a partially written snapshot.
+   */
+  static void write(Path file, Map<ResolveKey, ResolveHistory.Entry> resolves) throws IOException {
+    final Path directory = file.toAbsolutePath().getParent();
+    final Path tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+        final CodedOutputStream output = CodedOutputStream.newInstance(outputStream);
+        output.writeUInt32NoTag(VERSION);
+        for (Map.Entry<ResolveKey, ResolveHistory.Entry> entry : resolves.entrySet()) {
+          final Instant resolveTime = entry.getValue().resolveTime();
+          output.writeMessageNoTag(toRequest(entry.getKey()));
+          output.writeMessageNoTag(entry.getValue().response());
+          output.writeMessageNoTag(
+              Timestamp.newBuilder()
+                  .setSeconds(resolveTime.getEpochSecond())
+                  .setNanos(resolveTime.getNano())
+                  .build());
+        }
+        output.flush();
+      }
+      try {
+        Files.move(
+            tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  private static ResolveFlagsRequest toRequest(ResolveKey key) {
+    return ResolveFlagsRequest.newBuilder()
+        .addAllFlags(key.flags())
+        .setEvaluationContext(key.evaluationContext())
+        .setSdk(
+            Sdk.newBuilder()
+                .setId(
+                    key.isProvider() ? SdkId.SDK_ID_JAVA_PROVIDER : SdkId.SDK_ID_JAVA_CONFIDENCE))
+        .build();
+  }
+}
@@ -0,0 +1,101 @@
+package com.spotify.confidence;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A bounded queue for many producer threads and a single consumer thread, backed by a ring of
+ * preallocated slots.
+ *
+ * <p>A producer claims the next sequence with a single CAS and then publishes its element into the
+ * slot of that sequence, so offering allocates nothing and producers only contend on the claim. The
+ * consumer takes elements in sequence order and waits for a claimed slot to be published before
+ * moving past it.
+ */
+final class RingBuffer<T> {
+
+  private final AtomicReferenceArray<T> slots;
+  private final int mask;
+  // the next sequence to be claimed by a producer
+  private final AtomicLong tail = new AtomicLong();
+  // the next sequence to be consumed, only advanced by the consumer
+  private final AtomicLong head = new AtomicLong();
+
+  /**
+   * @param capacity the minimum number of elements the buffer can hold, rounded up to a power of
+   *     two
+   */
+  RingBuffer(int capacity) {
+    if (capacity <= 0 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("capacity must be positive and at most 2^30");
+    }
+    final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    this.slots = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  /**
+   * Adds an element to the buffer. Safe to call from any number of threads.
+   *
+   * @return false if the buffer is full
+   */
+  boolean offer(T element) {
+    long sequence;
+    do {
+      sequence = tail.get();
+      if (sequence - head.get() >= slots.length()) {
+        return false;
+      }
+    } while (!tail.compareAndSet(sequence, sequence + 1));
+    slots.lazySet(index(sequence), element);
+    return true;
+  }
+
+  /**
+   * Passes up to {@code maxElements} elements to the consumer, in the order they were claimed. May
+   * only be called from the consumer thread.
+   *
+   * @return the number of elements drained
+   */
+  int drain(Consumer<T> consumer, int maxElements) {
+    long sequence = head.get();
+    int drained = 0;
+    while (drained < maxElements) {
+      final int index = index(sequence);
+      final T element = slots.get(index);
+      if (element == null) {
+        if (sequence == tail.get()) {
+          break;
+        }
+        // a producer has claimed the slot, but not yet published its element into it
+        Thread.onSpinWait();
+        continue;
+      }
+      // the slot is cleared before the head moves past it, so producers never see a stale element
+      slots.lazySet(index, null);
+      head.lazySet(++sequence);
+      drained++;
+      consumer.accept(element);
+    }
+    return drained;
+  }
+
+  /** Returns the number of claimed sequences that haven't been consumed yet. */
+  int size() {
+    final long consumed = head.get();
+    return (int) (tail.get() - consumed);
+  }
+
+  boolean isEmpty() {
+    return size() == 0;
+  }
+
+  int capacity() {
+    return slots.length();
+  }
+
+  private int index(long sequence) {
+    return (int) sequence & mask;
+  }
+}
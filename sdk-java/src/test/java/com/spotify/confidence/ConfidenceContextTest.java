@@ -4,7 +4,12 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.jupiter.api.Test;
 
 public class ConfidenceContextTest {
@@ -123,4 +128,60 @@ public class ConfidenceContextTest {
                 "level_7", ConfidenceValue.of("i=7"),
                 "level_8", ConfidenceValue.of("i=8")));
   }
+
+  @Test
+  public void effectiveContextIsReusedUntilChanged() {
+    final Confidence root = Confidence.create(fakeEngine, fakeFlagResolverClient);
+    root.updateContextEntry("page", ConfidenceValue.of("home"));
+    final Confidence child = root.withContext(Map.of("user", ConfidenceValue.of("a")));
+    final Confidence grandChild = child.withContext(Map.of());
+
+    final ConfidenceValue.Struct context = grandChild.getContext();
+    assertThat(grandChild.getContext()).isSameAs(context);
+    // a child without own context shares the context of its parent
+    assertThat(child.getContext()).isSameAs(context);
+
+    child.updateContextEntry("user", ConfidenceValue.of("b"));
+    assertThat(grandChild.getContext()).isNotSameAs(context);
+    assertThat(grandChild.getContext().asMap())
+        .containsEntry("user", ConfidenceValue.of("b"))
+        .containsEntry("page", ConfidenceValue.of("home"));
+
+    final ConfidenceValue.Struct updated = grandChild.getContext();
+    root.removeContextEntry("page");
+    assertThat(grandChild.getContext()).isNotSameAs(updated);
+    assertThat(grandChild.getContext().asMap()).containsOnlyKeys("user");
+  }
+
+  @Test
+  public void concurrentContextUpdatesAreNotLost() throws Exception {
+    final Confidence root = Confidence.create(fakeEngine, fakeFlagResolverClient);
+    final Confidence child = root.withContext(Map.of("user", ConfidenceValue.of("a")));
+    final int threads = 8;
+    final int updatesPerThread = 200;
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        final int thread = t;
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < updatesPerThread; i++) {
+                    root.updateContextEntry("key-" + thread + "-" + i, ConfidenceValue.of(i));
+                    // readers see consistent snapshots while the context changes
+                    assertThat(child.getContext().asMap()).containsKey("user");
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(root.getContext().asMap()).hasSize(threads * updatesPerThread);
+    assertThat(child.getContext().asMap()).hasSize(threads * updatesPerThread + 1);
+  }
 }
@@ -2,6 +2,7 @@ package com.spotify.confidence;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.Value;
 import com.spotify.confidence.ConfidenceValue.Struct;
 import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsResponse;
@@ -10,8 +11,12 @@ import com.spotify.confidence.shaded.flags.resolver.v1.ResolvedFlag;
 import com.spotify.confidence.shaded.flags.types.v1.FlagSchema;
 import com.spotify.confidence.shaded.flags.types.v1.FlagSchema.StringFlagSchema;
 import com.spotify.confidence.shaded.flags.types.v1.FlagSchema.StructFlagSchema;
+import io.grpc.Status;
 import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -78,6 +83,61 @@ final class ConfidenceTest {
     assertTrue(evaluation.getErrorMessage().isEmpty());
   }
 
+  @Test
+  void getValueWithFlagKey() {
+    final FlagKey<Integer> flag = Confidence.flag("flag.prop-E", Integer.class);
+    assertEquals(50, confidence.getValue(flag, 20));
+
+    final FlagEvaluation<Double> evaluation =
+        confidence.getEvaluation(Confidence.flag("flag.prop-B.prop-D", Double.class), 1.0);
+    assertEquals(5.3, evaluation.getValue());
+    assertEquals("flags/flag/variants/var-A", evaluation.getVariant());
+    assertTrue(evaluation.getErrorType().isEmpty());
+
+    assertEquals(
+        "test", confidence.getValue(Confidence.flag("flag.prop-G.prop-H", String.class), "test"));
+  }
+
+  @Test
+  void getValueWithFlagKeyIncompatibleType() {
+    final FlagEvaluation<String> evaluation =
+        confidence.getEvaluation(Confidence.flag("flag.prop-E", String.class), "test");
+    assertEquals("test", evaluation.getValue());
+    assertEquals("ERROR", evaluation.getReason());
+    assertEquals(ErrorType.INVALID_VALUE_TYPE, evaluation.getErrorType().get());
+    assertEquals(
+        "Default type class java.lang.String, but value of "
+            + "type class com.spotify.confidence.ConfidenceValue$Integer",
+        evaluation.getErrorMessage().get());
+  }
+
+  @Test
+  void getPrimitiveValues() {
+    assertFalse(confidence.getBoolean("flag.prop-A", true));
+    assertEquals(50, confidence.getInt("flag.prop-E", 20));
+    assertEquals(5.3, confidence.getDouble("flag.prop-B.prop-D", 1.0));
+
+    assertFalse(confidence.getBoolean(Confidence.flag("flag.prop-A", Boolean.class), true));
+    assertEquals(50, confidence.getInt(Confidence.flag("flag.prop-E", Integer.class), 20));
+    assertEquals(
+        5.3, confidence.getDouble(Confidence.flag("flag.prop-B.prop-D", Double.class), 1.0));
+  }
+
+  @Test
+  void getPrimitiveValuesFallBackToDefault() {
+    // null value
+    assertEquals(20, confidence.getInt("flag.prop-G.prop-I", 20));
+    // incompatible type
+    assertTrue(confidence.getBoolean("flag.prop-E", true));
+    assertEquals(1.0, confidence.getDouble("flag.prop-E", 1.0));
+    // invalid paths
+    assertEquals(20, confidence.getInt("flag.prop-X", 20));
+    assertEquals(20, confidence.getInt("...", 20));
+
+    fakeFlagResolverClient.response = ResolveFlagsResponse.getDefaultInstance();
+    assertEquals(20, confidence.getInt("unknown-flag", 20));
+  }
+
   @Test
   void getValueIncompatibleType() {
     // flag.prop-E is actually of type int
@@ -242,6 +302,233 @@ final class ConfidenceTest {
                     + " is a Number, but it should be STRING_SCHEMA"));
   }
 
+  @Test
+  void getEvaluationsResolvesAllFlagsInOneRequest() {
+    final List<List<String>> requests = new ArrayList<>();
+    final Confidence confidence =
+        Confidence.create(
+            fakeEngine,
+            new ResolverClientTestUtils.FakeFlagResolverClient() {
+              @Override
+              public CompletableFuture<ResolveFlagsResponse> resolveFlags(
+                  List<String> flags, Struct context, Boolean isProvider) {
+                requests.add(flags);
+                return super.resolveFlags(flags, context, isProvider);
+              }
+            });
+    final Map<String, Integer> defaultValues = new LinkedHashMap<>();
+    defaultValues.put("flag.prop-E", 20);
+    defaultValues.put("flag.prop-X", 20);
+    defaultValues.put("other-flag.prop-E", 20);
+    defaultValues.put("...", 20);
+
+    final Map<String, FlagEvaluation<Integer>> evaluations =
+        confidence.getEvaluations(defaultValues);
+
+    assertEquals(List.of(List.of("flags/flag", "flags/other-flag")), requests);
+    assertEquals(List.copyOf(defaultValues.keySet()), List.copyOf(evaluations.keySet()));
+
+    final FlagEvaluation<Integer> evaluation = evaluations.get("flag.prop-E");
+    assertEquals(50, evaluation.getValue());
+    assertEquals("flags/flag/variants/var-A", evaluation.getVariant());
+    assertEquals("RESOLVE_REASON_MATCH", evaluation.getReason());
+    assertTrue(evaluation.getErrorType().isEmpty());
+
+    assertEquals(20, evaluations.get("flag.prop-X").getValue());
+    assertEquals(ErrorType.INVALID_VALUE_PATH, evaluations.get("flag.prop-X").getErrorType().get());
+    assertEquals(20, evaluations.get("other-flag.prop-E").getValue());
+    assertEquals(
+        ErrorType.FLAG_NOT_FOUND, evaluations.get("other-flag.prop-E").getErrorType().get());
+    assertEquals(20, evaluations.get("...").getValue());
+    assertEquals(ErrorType.INVALID_VALUE_PATH, evaluations.get("...").getErrorType().get());
+  }
+
+  @Test
+  void evaluatedFlagsAreApplied() {
+    final List<String> appliedFlags = new ArrayList<>();
+    final Confidence confidence =
+        Confidence.create(
+            fakeEngine,
+            new ResolverClientTestUtils.FakeFlagResolverClient() {
+              @Override
+              public void apply(String flag, ByteString resolveToken) {
+                appliedFlags.add(flag);
+              }
+            });
+
+    confidence.getValue("flag.prop-E", 20);
+    confidence.getValue("unknown-flag", 20);
+    confidence.getEvaluations(Map.of("flag.prop-A", false, "flag.prop-B.prop-D", 0.0));
+
+    assertEquals(List.of("flags/flag", "flags/flag"), appliedFlags);
+  }
+
+  @Test
+  void getEvaluationsInternalError() {
+    final Confidence confidence = Confidence.create(fakeEngine, new FailingFlagResolverClient());
+    final Map<String, FlagEvaluation<Integer>> evaluations =
+        confidence.getEvaluations(Map.of("flag.prop-E", 20));
+
+    final FlagEvaluation<Integer> evaluation = evaluations.get("flag.prop-E");
+    assertEquals(20, evaluation.getValue());
+    assertEquals("ERROR", evaluation.getReason());
+    assertEquals(ErrorType.INTERNAL_ERROR, evaluation.getErrorType().get());
+    assertTrue(
+        evaluation.getErrorMessage().get().startsWith("Crashing while performing network call"));
+  }
+
+  @Test
+  void getEvaluationAsync() {
+    final CompletableFuture<ResolveFlagsResponse> response = new CompletableFuture<>();
+    final Confidence confidence =
+        Confidence.create(fakeEngine, new PendingFlagResolverClient(response));
+
+    final CompletableFuture<FlagEvaluation<Integer>> evaluation =
+        confidence.getEvaluationAsync("flag.prop-E", 20);
+    assertFalse(evaluation.isDone());
+
+    response.complete(fakeFlagResolverClient.response);
+    assertEquals(50, evaluation.join().getValue());
+    assertEquals("flags/flag/variants/var-A", evaluation.join().getVariant());
+  }
+
+  @Test
+  void getEvaluationAsyncTimeout() {
+    final CompletableFuture<ResolveFlagsResponse> response = new CompletableFuture<>();
+    final Confidence confidence =
+        Confidence.create(fakeEngine, new PendingFlagResolverClient(response));
+
+    final FlagEvaluation<Integer> evaluation =
+        confidence.getEvaluationAsync("flag.prop-E", 20, Duration.ofMillis(10)).join();
+
+    assertEquals(20, evaluation.getValue());
+    assertEquals("ERROR", evaluation.getReason());
+    assertEquals(ErrorType.NETWORK_ERROR, evaluation.getErrorType().get());
+    assertEquals("Resolving flag 'flag' timed out after 10 ms", evaluation.getErrorMessage().get());
+    assertFalse(response.isDone());
+  }
+
+  @Test
+  void getEvaluationAsyncFailedResolve() {
+    final CompletableFuture<ResolveFlagsResponse> response = new CompletableFuture<>();
+    final Confidence confidence =
+        Confidence.create(fakeEngine, new PendingFlagResolverClient(response));
+
+    final CompletableFuture<FlagEvaluation<Integer>> evaluation =
+        confidence.getEvaluationAsync("flag.prop-E", 20);
+    response.completeExceptionally(new RuntimeException("Backend unavailable"));
+
+    assertEquals(20, evaluation.join().getValue());
+    assertEquals(ErrorType.INTERNAL_ERROR, evaluation.join().getErrorType().get());
+    assertEquals("Backend unavailable", evaluation.join().getErrorMessage().get());
+  }
+
+  @Test
+  void getEvaluationWithDeadlineCountsTimeouts() {
+    final Confidence confidence =
+        Confidence.create(fakeEngine, new PendingFlagResolverClient(new CompletableFuture<>()));
+
+    final FlagEvaluation<Integer> evaluation =
+        confidence.getEvaluation("flag.prop-E", 20, Duration.ofMillis(10));
+
+    assertEquals(20, evaluation.getValue());
+    assertEquals(ErrorType.NETWORK_ERROR, evaluation.getErrorType().get());
+    assertEquals(1, confidence.getDeadlineExceededCount());
+  }
+
+  @Test
+  void deadlineExceededFallsBackToDefault() {
+    final CompletableFuture<ResolveFlagsResponse> response = new CompletableFuture<>();
+    final Confidence confidence =
+        Confidence.create(fakeEngine, new PendingFlagResolverClient(response));
+    final Confidence child = confidence.withContext(Map.of("k", ConfidenceValue.of("v")));
+
+    final CompletableFuture<FlagEvaluation<Integer>> evaluation =
+        child.getEvaluationAsync("flag.prop-E", 20);
+    response.completeExceptionally(Status.DEADLINE_EXCEEDED.asRuntimeException());
+
+    assertEquals(20, evaluation.join().getValue());
+    assertEquals(ErrorType.NETWORK_ERROR, evaluation.join().getErrorType().get());
+    assertEquals(
+        "Deadline exceeded when resolving flag 'flag'", evaluation.join().getErrorMessage().get());
+    // the counter is shared between a parent and its children
+    assertEquals(1, confidence.getDeadlineExceededCount());
+  }
+
+  @Test
+  void getEvaluationsCountsExceededDeadlines() {
+    final CompletableFuture<ResolveFlagsResponse> response = new CompletableFuture<>();
+    final Confidence confidence =
+        Confidence.create(fakeEngine, new PendingFlagResolverClient(response));
+    response.completeExceptionally(Status.DEADLINE_EXCEEDED.asRuntimeException());
+
+    final Map<String, FlagEvaluation<Integer>> evaluations =
+        confidence.getEvaluations(Map.of("flag.prop-E", 20));
+
+    assertEquals(20, evaluations.get("flag.prop-E").getValue());
+    assertEquals(1, confidence.getDeadlineExceededCount());
+  }
+
+  @Test
+  void resolveDeadlineMustBePositive() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> Confidence.builder("secret").resolveDeadline(Duration.ZERO));
+  }
+
+  @Test
+  void lastKnownResolveIsServedAsStale() {
+    final FlagResolverClientImplTest.CountingFlagResolver flagResolver =
+        new FlagResolverClientImplTest.CountingFlagResolver();
+    flagResolver.response = CompletableFuture.completedFuture(fakeFlagResolverClient.response);
+    final List<String> appliedFlags = new ArrayList<>();
+    final FlagApplier flagApplier =
+        new FlagApplier() {
+          @Override
+          public void apply(String flag, ByteString resolveToken) {
+            appliedFlags.add(flag);
+          }
+
+          @Override
+          public void flush() {}
+
+          @Override
+          public void close() {}
+        };
+    final Confidence confidence =
+        Confidence.create(
+            fakeEngine,
+            new FlagResolverClientImpl(
+                flagResolver,
+                null,
+                flagApplier,
+                new ResolveHistory(10, Duration.ofMinutes(1), Instant::now)));
+    assertEquals(50, confidence.getEvaluation("flag.prop-E", 20).getValue());
+    assertEquals(List.of("flags/flag"), appliedFlags);
+
+    flagResolver.response = CompletableFuture.failedFuture(Status.UNAVAILABLE.asRuntimeException());
+    final FlagEvaluation<Integer> evaluation = confidence.getEvaluation("flag.prop-E", 20);
+    assertEquals(50, evaluation.getValue());
+    assertEquals("flags/flag/variants/var-A", evaluation.getVariant());
+    assertEquals("STALE", evaluation.getReason());
+    assertTrue(evaluation.getErrorType().isEmpty());
+
+    final FlagEvaluation<Integer> batchEvaluation =
+        confidence.getEvaluations(Map.of("flag.prop-E", 20)).get("flag.prop-E");
+    assertEquals(50, batchEvaluation.getValue());
+    assertEquals("STALE", batchEvaluation.getReason());
+    // the resolve token of a stale resolve isn't applied again
+    assertEquals(List.of("flags/flag"), appliedFlags);
+
+    // without a previous resolve in the same context, the default value is used
+    final FlagEvaluation<Integer> otherContext =
+        confidence
+            .withContext(Map.of("user", ConfidenceValue.of("other")))
+            .getEvaluation("flag.prop-E", 20);
+    assertEquals(20, otherContext.getValue());
+    assertEquals("ERROR", otherContext.getReason());
+  }
+
   @Test
   void internalError() {
     final Confidence confidence = Confidence.create(fakeEngine, new FailingFlagResolverClient());
@@ -258,11 +545,28 @@ final class ConfidenceTest {
         evaluation.getErrorMessage().get().startsWith("Crashing while performing network call"));
   }
 
+  public static class PendingFlagResolverClient implements FlagResolverClient {
+    private final CompletableFuture<ResolveFlagsResponse> response;
+
+    PendingFlagResolverClient(CompletableFuture<ResolveFlagsResponse> response) {
+      this.response = response;
+    }
+
+    @Override
+    public CompletableFuture<ResolveFlagsResponse> resolveFlags(
+        List<String> flags, Struct context, Boolean isProvider) {
+      return response;
+    }
+
+    @Override
+    public void close() {}
+  }
+
   public static class FailingFlagResolverClient implements FlagResolverClient {
 
     @Override
     public CompletableFuture<ResolveFlagsResponse> resolveFlags(
-        String flag, Struct context, Boolean isProvider) {
+        List<String> flags, Struct context, Boolean isProvider) {
       throw new RuntimeException("Crashing while performing network call");
     }
 
@@ -0,0 +1,58 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.Exceptions.ParseError;
+import com.spotify.confidence.Exceptions.ValueNotFound;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolvedFlag;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ConfidenceTypeMapperTest {
+
+  private final ResolvedFlag resolvedFlag =
+      ResolverClientTestUtils.generateSampleResponse(List.of()).getResolvedFlags(0);
+
+  @Test
+  void valuesAtPathsMatchTheFullValue() throws ValueNotFound {
+    final ConfidenceValue.Struct fullValue =
+        ConfidenceTypeMapper.from(resolvedFlag.getValue(), resolvedFlag.getFlagSchema()).asStruct();
+
+    assertThat(ConfidenceTypeMapper.from(resolvedFlag, List.of())).isEqualTo(fullValue);
+    assertThat(ConfidenceTypeMapper.from(resolvedFlag, List.of("prop-B")))
+        .isEqualTo(fullValue.get("prop-B"));
+    assertThat(ConfidenceTypeMapper.from(resolvedFlag, List.of("prop-B", "prop-D")))
+        .isEqualTo(ConfidenceValue.of(5.3));
+    assertThat(ConfidenceTypeMapper.from(resolvedFlag, List.of("prop-F")))
+        .isEqualTo(fullValue.get("prop-F"));
+    assertThat(ConfidenceTypeMapper.from(resolvedFlag, List.of("prop-G", "prop-H")))
+        .isEqualTo(ConfidenceValue.NULL_VALUE);
+  }
+
+  @Test
+  void onlyFieldsAlongThePathAreDecoded() throws ValueNotFound {
+    final ResolvedFlag withUnknownField =
+        resolvedFlag.toBuilder()
+            .setValue(resolvedFlag.getValue().toBuilder().putFields("unknown", Values.of(1)))
+            .build();
+
+    assertThat(ConfidenceTypeMapper.from(withUnknownField, List.of("prop-E")))
+        .isEqualTo(ConfidenceValue.of(50));
+    assertThatThrownBy(() -> ConfidenceTypeMapper.from(withUnknownField, List.of("unknown")))
+        .isInstanceOf(ParseError.class)
+        .hasMessage("Lacking schema for field 'unknown'");
+  }
+
+  @Test
+  void missingPathsAreReported() {
+    assertThatThrownBy(() -> ConfidenceTypeMapper.from(resolvedFlag, List.of("prop-B", "prop-X")))
+        .isInstanceOf(ValueNotFound.class)
+        .hasMessageStartingWith(
+            "Illegal attempt to derive non-existing field 'prop-X' on structure value");
+    assertThatThrownBy(() -> ConfidenceTypeMapper.from(resolvedFlag, List.of("prop-E", "prop-X")))
+        .isInstanceOf(ValueNotFound.class)
+        .hasMessageStartingWith("Illegal attempt to derive field 'prop-X' on non-structure value");
+  }
+}
@@ -268,6 +268,10 @@ class ConfidenceValueTest {
     final Map<String, com.google.protobuf.Value> protoMap = structValue.asProtoMap();
     assertTrue(protoMap.containsKey("key"));
     assertEquals("value", protoMap.get("key").getStringValue());
+
+    // the returned map is a copy that callers may modify
+    protoMap.remove("key");
+    assertTrue(structValue.asProtoMap().containsKey("key"));
   }
 
   @Test
@@ -431,4 +435,21 @@ class ConfidenceValueTest {
     final com.google.protobuf.Value protoValue = com.google.protobuf.Value.newBuilder().build();
     assertThrows(IllegalArgumentException.class, () -> ConfidenceValue.fromProto(protoValue));
   }
+
+  @Test
+  public void testStructProtoIsReused() {
+    final ConfidenceValue.Struct structValue =
+        ConfidenceValue.of(
+            Map.of(
+                "key", ConfidenceValue.of("value"),
+                "list", ConfidenceValue.of(List.of(ConfidenceValue.of(1), ConfidenceValue.of(2)))));
+
+    assertThat(structValue.toProto()).isSameAs(structValue.toProto());
+    assertThat(structValue.asProtoMap().get("list"))
+        .isSameAs(structValue.asMap().get("list").toProto());
+    assertThat(structValue)
+        .isEqualTo(ConfidenceValue.Struct.fromProto(structValue.toProto().getStructValue()))
+        .hasSameHashCodeAs(
+            ConfidenceValue.Struct.fromProto(structValue.toProto().getStructValue()));
+  }
 }
@@ -0,0 +1,52 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.protobuf.Value;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class ContextInternerTest {
+
+  private final ContextInterner interner = new ContextInterner();
+
+  @Test
+  void equalContextsAreSharedAndCountedOnce() {
+    final Value first = context("user-1").toProto();
+    final Value second = context("user-1").toProto();
+    final Value other = context("user-2").toProto();
+    assertThat(first).isNotSameAs(second);
+
+    assertThat(interner.retain(first)).isSameAs(first);
+    assertThat(interner.retain(second)).isSameAs(first);
+    assertThat(interner.retain(other)).isSameAs(other);
+
+    assertThat(interner.size()).isEqualTo(2);
+    assertThat(interner.retainedBytes())
+        .isEqualTo(first.getSerializedSize() + other.getSerializedSize());
+  }
+
+  @Test
+  void contextsAreForgottenWhenLastReferenceIsReleased() {
+    final Value context = context("user-1").toProto();
+    interner.retain(context);
+    interner.retain(context("user-1").toProto());
+
+    interner.release(context);
+    assertThat(interner.size()).isEqualTo(1);
+    assertThat(interner.retainedBytes()).isEqualTo(context.getSerializedSize());
+
+    interner.release(context);
+    assertThat(interner.size()).isZero();
+    assertThat(interner.retainedBytes()).isZero();
+
+    // a context retained again after being forgotten is the new shared instance
+    final Value later = context("user-1").toProto();
+    assertThat(interner.retain(later)).isSameAs(later);
+  }
+
+  private static ConfidenceValue.Struct context(String user) {
+    return ConfidenceValue.of(
+        Map.of("targeting_key", ConfidenceValue.of(user), "country", ConfidenceValue.of("SE")));
+  }
+}
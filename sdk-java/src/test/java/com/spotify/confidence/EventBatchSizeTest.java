@@ -0,0 +1,49 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class EventBatchSizeTest {
+
+  @Test
+  void fixedSizeIgnoresLatency() {
+    final EventBatchSize batchSize = EventBatchSize.fixed(25, 1000);
+    batchSize.onUpload(Duration.ofMinutes(1), false);
+    assertThat(batchSize.maxEvents()).isEqualTo(25);
+    assertThat(batchSize.maxBytes()).isEqualTo(1000);
+  }
+
+  @Test
+  void adaptiveSizeShrinksWhenSlowAndGrowsWhenFast() {
+    final EventBatchSize batchSize = EventBatchSize.adaptive(10, 100, 1000, Duration.ofMillis(200));
+    assertThat(batchSize.maxEvents()).isEqualTo(100);
+
+    batchSize.onUpload(Duration.ofMillis(500), true);
+    assertThat(batchSize.maxEvents()).isEqualTo(50);
+    batchSize.onUpload(Duration.ofMillis(50), false);
+    assertThat(batchSize.maxEvents()).isEqualTo(25);
+    batchSize.onUpload(Duration.ofSeconds(1), true);
+    batchSize.onUpload(Duration.ofSeconds(1), true);
+    assertThat(batchSize.maxEvents()).isEqualTo(10);
+
+    batchSize.onUpload(Duration.ofMillis(50), true);
+    assertThat(batchSize.maxEvents()).isEqualTo(12);
+    for (int i = 0; i < 20; i++) {
+      batchSize.onUpload(Duration.ofMillis(50), true);
+    }
+    assertThat(batchSize.maxEvents()).isEqualTo(100);
+  }
+
+  @Test
+  void limitsMustBePositive() {
+    assertThatThrownBy(() -> EventBatchSize.fixed(0, 1000))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> EventBatchSize.fixed(10, 0))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> EventBatchSize.adaptive(1, 10, 1000, Duration.ZERO))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
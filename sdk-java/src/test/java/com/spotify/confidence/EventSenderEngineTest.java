@@ -9,15 +9,22 @@ import com.google.common.collect.ImmutableMap;
 import com.google.protobuf.Struct;
 import com.google.protobuf.Value;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class EventSenderEngineTest {
 
   private final FakeClock clock = new FakeClock();
+  @TempDir Path spillDirectory;
 
   @Test
   public void testEngineRejectsEventsAfterClosed() throws IOException {
@@ -312,6 +319,209 @@ public class EventSenderEngineTest {
     assertThat(alwaysSucceedUploader.uploadCalls.size()).isEqualTo(expectedNumberOfBatches);
   }
 
+  @Test
+  public void eventsThatDontFitInFullQueueAreDropped() throws IOException {
+    final FakeUploader alwaysSucceedUploader = new FakeUploader();
+    final AtomicInteger dropped = new AtomicInteger();
+    final int numberOfEvents = 10000;
+    // the queue holds only two batches, so producers may find it full
+    final EventSenderEngine engine =
+        new EventSenderEngineImpl(
+            EventBatchSize.fixed(2, DEFAULT_MAX_BATCH_BYTES),
+            DEFAULT_MAX_IN_FLIGHT_UPLOADS,
+            alwaysSucceedUploader,
+            clock,
+            DEFAULT_MAX_FLUSH_INTERVAL,
+            DEFAULT_MAX_MEMORY_CONSUMPTION,
+            1,
+            null,
+            new ConfidenceMetrics() {
+              @Override
+              public void eventsDropped(int events) {
+                dropped.addAndGet(events);
+              }
+            });
+    final CompletableFuture<?>[] producers = new CompletableFuture[4];
+    for (int p = 0; p < producers.length; p++) {
+      producers[p] =
+          CompletableFuture.runAsync(
+              () -> {
+                for (int i = 0; i < numberOfEvents / producers.length; i++) {
+                  engine.emit("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty());
+                }
+              });
+    }
+    CompletableFuture.allOf(producers).join();
+    engine.close();
+
+    assertThat(alwaysSucceedUploader.uploadCalls.stream().mapToInt(List::size).sum())
+        .isEqualTo(numberOfEvents - dropped.get());
+  }
+
+  @Test
+  public void emitDoesNotBlockWhileUploadsAreFailing() throws IOException {
+    final int eventSize =
+        EventUploader.event("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty())
+            .setEventTime(clock.getTimestamp())
+            .build()
+            .getSerializedSize();
+    final AtomicInteger dropped = new AtomicInteger();
+    final List<CompletableFuture<Boolean>> hangingUploads = new CopyOnWriteArrayList<>();
+    final AtomicBoolean outage = new AtomicBoolean(true);
+    final EventSenderEngineImpl engine =
+        new EventSenderEngineImpl(
+            EventBatchSize.fixed(8, DEFAULT_MAX_BATCH_BYTES),
+            2,
+            events -> {
+              if (!outage.get()) {
+                return CompletableFuture.completedFuture(true);
+              }
+              final CompletableFuture<Boolean> upload = new CompletableFuture<>();
+              hangingUploads.add(upload);
+              return upload;
+            },
+            clock,
+            DEFAULT_MAX_FLUSH_INTERVAL,
+            // room for a few hundred events in memory
+            1000L * eventSize,
+            256,
+            null,
+            new ConfidenceMetrics() {
+              @Override
+              public void eventsDropped(int events) {
+                dropped.addAndGet(events);
+              }
+            });
+
+    final Stopwatch stopwatch = Stopwatch.createStarted();
+    for (int i = 0; i < 20000; i++) {
+      engine.emit("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty());
+    }
+    assertThat(stopwatch.elapsed()).isLessThan(Duration.ofSeconds(5));
+    assertThat(dropped.get()).isPositive();
+    awaitCondition(() -> hangingUploads.size() == 2);
+    assertThat(engine.getEstimatedMemoryConsumption()).isLessThanOrEqualTo(1000L * eventSize);
+
+    // the waiting batches are uploaded once the backend recovers
+    outage.set(false);
+    hangingUploads.forEach(upload -> upload.complete(true));
+    engine.flush();
+    awaitCondition(() -> engine.getEstimatedMemoryConsumption() == 0);
+    engine.close();
+    assertThat(dropped.get()).isLessThan(20000);
+  }
+
+  @Test
+  public void batchesAreLimitedBySerializedSize() throws IOException {
+    final FakeUploader alwaysSucceedUploader = new FakeUploader();
+    final int eventSize =
+        EventUploader.event("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty())
+            .setEventTime(clock.getTimestamp())
+            .build()
+            .getSerializedSize();
+    final EventSenderEngine engine =
+        new EventSenderEngineImpl(
+            EventBatchSize.fixed(100, 3L * eventSize),
+            DEFAULT_MAX_IN_FLIGHT_UPLOADS,
+            alwaysSucceedUploader,
+            clock,
+            DEFAULT_MAX_FLUSH_INTERVAL,
+            DEFAULT_MAX_MEMORY_CONSUMPTION,
+            DEFAULT_QUEUE_CAPACITY,
+            null);
+    for (int i = 0; i < 10; i++) {
+      engine.emit("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty());
+    }
+    engine.close();
+
+    assertThat(alwaysSucceedUploader.uploadCalls.stream().map(List::size))
+        .containsExactly(3, 3, 3, 1);
+  }
+
+  @Test
+  public void uploadsInFlightAreLimited() throws Exception {
+    final List<CompletableFuture<Boolean>> uploads = new CopyOnWriteArrayList<>();
+    final EventUploader slowUploader =
+        events -> {
+          final CompletableFuture<Boolean> upload = new CompletableFuture<>();
+          uploads.add(upload);
+          return upload;
+        };
+    final EventSenderEngine engine =
+        new EventSenderEngineImpl(
+            EventBatchSize.fixed(1, DEFAULT_MAX_BATCH_BYTES),
+            2,
+            slowUploader,
+            clock,
+            DEFAULT_MAX_FLUSH_INTERVAL,
+            DEFAULT_MAX_MEMORY_CONSUMPTION,
+            DEFAULT_QUEUE_CAPACITY,
+            null);
+    for (int i = 0; i < 5; i++) {
+      engine.emit("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty());
+    }
+    Thread.sleep(300);
+    assertThat(uploads).hasSize(2);
+
+    uploads.get(0).complete(true);
+    Thread.sleep(300);
+    assertThat(uploads).hasSize(3);
+
+    uploads.forEach(upload -> upload.complete(true));
+    Thread.sleep(300);
+    uploads.forEach(upload -> upload.complete(true));
+    engine.close();
+    assertThat(uploads).hasSize(5);
+  }
+
+  @Test
+  public void pendingEventsShareTheirContext() throws IOException {
+    final CompletableFuture<Boolean> upload = new CompletableFuture<>();
+    final FakeUploader uploader = new FakeUploader();
+    final EventSenderEngineImpl engine =
+        new EventSenderEngineImpl(
+            100,
+            events -> uploader.upload(events).thenCompose(uploaded -> upload),
+            clock,
+            DEFAULT_MAX_FLUSH_INTERVAL,
+            DEFAULT_MAX_MEMORY_CONSUMPTION);
+    for (int i = 0; i < 100; i++) {
+      // a new but equal context for every event, like per-request Confidence instances have
+      engine.emit(
+          "navigate",
+          ConfidenceValue.of(
+              Map.of(
+                  "targeting_key", ConfidenceValue.of("user-1"),
+                  "country", ConfidenceValue.of("SE"))),
+          Optional.of(ConfidenceValue.of(Map.of("index", ConfidenceValue.of(i)))));
+    }
+    engine.flush();
+    final List<com.spotify.confidence.events.v1.Event> events = awaitUpload(uploader);
+
+    final Value context = events.get(0).getPayload().getFieldsOrThrow("context");
+    assertThat(events)
+        .allSatisfy(
+            event -> assertThat(event.getPayload().getFieldsOrThrow("context")).isSameAs(context));
+    final long eventBytes = events.stream().mapToLong(event -> event.getSerializedSize()).sum();
+    assertThat(engine.getPendingContextCount()).isEqualTo(1);
+    assertThat(engine.getEstimatedMemoryConsumption())
+        .isEqualTo(eventBytes - 99L * context.getSerializedSize());
+
+    upload.complete(true);
+    engine.close();
+    assertThat(engine.getPendingContextCount()).isZero();
+    assertThat(engine.getEstimatedMemoryConsumption()).isZero();
+  }
+
+  private static List<com.spotify.confidence.events.v1.Event> awaitUpload(FakeUploader uploader) {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (uploader.uploadCalls.isEmpty() && System.nanoTime() < deadline) {
+      Thread.onSpinWait();
+    }
+    assertThat(uploader.uploadCalls).hasSize(1);
+    return uploader.uploadCalls.peek();
+  }
+
   @Test
   public void testUnsentEventsAreCancelledOnThreadInterrupted() throws Exception {
     final CompletableFuture<Boolean> batchResult = new CompletableFuture<>();
@@ -332,6 +542,135 @@ public class EventSenderEngineTest {
     assertThat(batchResult.isCancelled()).isTrue();
   }
 
+  @Test
+  public void eventsOverTheMemoryLimitAreSpilledAndUploadedLater() throws Exception {
+    final CompletableFuture<Boolean> firstUpload = new CompletableFuture<>();
+    final FakeUploader uploader = new FakeUploader();
+    final EventSpillQueue spillQueue = EventSpillQueue.open(spillDirectory, 1024, 1024 * 1024);
+    final long eventSize =
+        EventUploader.event("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty())
+            .setEventTime(clock.getTimestamp())
+            .build()
+            .getSerializedSize();
+    // the engine can only keep a single event in memory
+    final EventSenderEngineImpl engine =
+        new EventSenderEngineImpl(
+            EventBatchSize.fixed(1, DEFAULT_MAX_BATCH_BYTES),
+            DEFAULT_MAX_IN_FLIGHT_UPLOADS,
+            events ->
+                uploader.uploadCalls.isEmpty()
+                    ? uploader.upload(events).thenCompose(uploaded -> firstUpload)
+                    : uploader.upload(events),
+            clock,
+            DEFAULT_MAX_FLUSH_INTERVAL,
+            eventSize,
+            DEFAULT_QUEUE_CAPACITY,
+            spillQueue);
+    engine.emit("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty());
+    awaitUpload(uploader);
+    engine.emit("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty());
+    engine.emit("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty());
+    // the spilled events are written in the background
+    awaitCondition(() -> !spillQueue.isEmpty());
+
+    firstUpload.complete(true);
+    awaitUploadCount(uploader, 3);
+    engine.close();
+    assertThat(uploader.uploadCalls.stream().mapToInt(List::size).sum()).isEqualTo(3);
+    assertThat(spillQueue.isEmpty()).isTrue();
+  }
+
+  @Test
+  public void eventsPendingOnCloseAreUploadedByTheNextEngine() throws Exception {
+    final CompletableFuture<Void> isUploadCalled = new CompletableFuture<>();
+    final EventSenderEngineImpl engine =
+        new EventSenderEngineImpl(
+            EventBatchSize.fixed(10, DEFAULT_MAX_BATCH_BYTES),
+            DEFAULT_MAX_IN_FLIGHT_UPLOADS,
+            events -> {
+              isUploadCalled.complete(null);
+              return new CompletableFuture<>();
+            },
+            clock,
+            DEFAULT_MAX_FLUSH_INTERVAL,
+            DEFAULT_MAX_MEMORY_CONSUMPTION,
+            DEFAULT_QUEUE_CAPACITY,
+            EventSpillQueue.open(spillDirectory, 1024, 1024 * 1024));
+    engine.emit("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty());
+    engine.emit("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty());
+    engine.flush();
+    isUploadCalled.join();
+    Thread.currentThread().interrupt();
+    engine.close();
+    assertThat(Thread.interrupted()).isTrue();
+
+    final FakeUploader uploader = new FakeUploader();
+    final EventSpillQueue spillQueue = EventSpillQueue.open(spillDirectory, 1024, 1024 * 1024);
+    assertThat(spillQueue.isEmpty()).isFalse();
+    final EventSenderEngineImpl nextEngine =
+        new EventSenderEngineImpl(
+            EventBatchSize.fixed(10, DEFAULT_MAX_BATCH_BYTES),
+            DEFAULT_MAX_IN_FLIGHT_UPLOADS,
+            uploader,
+            clock,
+            DEFAULT_MAX_FLUSH_INTERVAL,
+            DEFAULT_MAX_MEMORY_CONSUMPTION,
+            DEFAULT_QUEUE_CAPACITY,
+            spillQueue);
+    assertThat(awaitUpload(uploader)).hasSize(2);
+    awaitCondition(spillQueue::isEmpty);
+    nextEngine.close();
+  }
+
+  @Test
+  public void spilledEventsWaitForAnUploadPermit() throws Exception {
+    final EventSpillQueue spillQueue = EventSpillQueue.open(spillDirectory, 1024, 1024 * 1024);
+    spillQueue.append(
+        List.of(
+            EventUploader.event("spilled", ConfidenceValue.Struct.EMPTY, Optional.empty())
+                .setEventTime(clock.getTimestamp())
+                .build()));
+    final CompletableFuture<Boolean> hangingUpload = new CompletableFuture<>();
+    final FakeUploader uploader = new FakeUploader();
+    final EventSenderEngineImpl engine =
+        new EventSenderEngineImpl(
+            EventBatchSize.fixed(1, DEFAULT_MAX_BATCH_BYTES),
+            1,
+            events ->
+                uploader.uploadCalls.isEmpty()
+                    ? uploader.upload(events).thenCompose(uploaded -> hangingUpload)
+                    : uploader.upload(events),
+            clock,
+            DEFAULT_MAX_FLUSH_INTERVAL,
+            DEFAULT_MAX_MEMORY_CONSUMPTION,
+            DEFAULT_QUEUE_CAPACITY,
+            spillQueue);
+    // the spilled event takes the only permit, and new events are emitted meanwhile
+    awaitUpload(uploader);
+    engine.emit("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty());
+    engine.emit("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty());
+    Thread.sleep(100);
+    assertThat(uploader.uploadCalls).hasSize(1);
+
+    hangingUpload.complete(true);
+    awaitUploadCount(uploader, 3);
+    awaitCondition(spillQueue::isEmpty);
+    engine.close();
+  }
+
+  private static void awaitUploadCount(FakeUploader uploader, int count) {
+    awaitCondition(() -> uploader.uploadCalls.size() >= count);
+    assertThat(uploader.uploadCalls).hasSize(count);
+  }
+
+  private static void awaitCondition(java.util.function.BooleanSupplier condition) {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+      Thread.onSpinWait();
+    }
+    assertThat(condition.getAsBoolean()).isTrue();
+  }
+
   @Test
   public void testEngineWillRejectEventsIfOverMemoryThreshold() throws IOException {
     final var expectedEvent =
@@ -357,6 +696,54 @@ public class EventSenderEngineTest {
     assertThat(fakeUploader.uploadCalls.size()).isEqualTo(1);
   }
 
+  @Test
+  public void droppedAndPendingEventsAreReportedToMetrics() throws IOException {
+    final long eventSize =
+        EventUploader.event("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty())
+            .setEventTime(clock.getTimestamp())
+            .build()
+            .getSerializedSize();
+    final AtomicInteger dropped = new AtomicInteger();
+    final AtomicReference<LongSupplier> pendingEvents = new AtomicReference<>();
+    final AtomicBoolean registrationClosed = new AtomicBoolean(false);
+    final CompletableFuture<Boolean> upload = new CompletableFuture<>();
+    final EventSenderEngineImpl engine =
+        new EventSenderEngineImpl(
+            EventBatchSize.fixed(1, DEFAULT_MAX_BATCH_BYTES),
+            DEFAULT_MAX_IN_FLIGHT_UPLOADS,
+            events -> upload,
+            clock,
+            DEFAULT_MAX_FLUSH_INTERVAL,
+            eventSize,
+            DEFAULT_QUEUE_CAPACITY,
+            null,
+            new ConfidenceMetrics() {
+              @Override
+              public void eventsDropped(int events) {
+                dropped.addAndGet(events);
+              }
+
+              @Override
+              public Registration registerEventQueue(
+                  LongSupplier pending, LongSupplier estimatedMemoryBytes) {
+                pendingEvents.set(pending);
+                return () -> registrationClosed.set(true);
+              }
+            });
+
+    engine.emit("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty());
+    engine.emit("navigate", ConfidenceValue.Struct.EMPTY, Optional.empty());
+    assertThat(pendingEvents.get().getAsLong()).isEqualTo(1);
+    assertThat(dropped).hasValue(1);
+
+    upload.complete(true);
+    awaitCondition(() -> pendingEvents.get().getAsLong() == 0);
+    assertThat(registrationClosed).isFalse();
+    engine.close();
+    assertThat(dropped).hasValue(1);
+    assertThat(registrationClosed).isTrue();
+  }
+
   @Test
   public void testEngineThrowsExceptionWhenMaxFlushIntervalIsZero() {
     assertThatThrownBy(
@@ -0,0 +1,107 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.confidence.events.v1.Event;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EventSpillQueueTest {
+
+  @TempDir Path directory;
+
+  @Test
+  void eventsAreReadInOrderByTheNextProcess() throws IOException {
+    final List<Event> events = events(10);
+    final EventSpillQueue queue = EventSpillQueue.open(directory, 1024, 1024 * 1024);
+    assertThat(queue.append(events.subList(0, 4))).isTrue();
+    assertThat(queue.append(events.subList(4, 10))).isTrue();
+    queue.close();
+
+    final EventSpillQueue reopened = EventSpillQueue.open(directory, 1024, 1024 * 1024);
+    assertThat(reopened.sizeBytes()).isEqualTo(queue.sizeBytes());
+    assertThat(readAll(reopened)).containsExactlyElementsOf(events);
+    assertThat(reopened.isEmpty()).isTrue();
+    assertThat(reopened.sizeBytes()).isZero();
+    try (var files = Files.list(directory)) {
+      assertThat(files).isEmpty();
+    }
+  }
+
+  @Test
+  void segmentsAreLimitedInSize() throws IOException {
+    final List<Event> events = events(100);
+    final EventSpillQueue queue = EventSpillQueue.open(directory, 512, 1024 * 1024);
+    events.forEach(event -> queue.append(List.of(event)));
+
+    final EventSpillQueue.Segment first = queue.oldest().orElseThrow();
+    assertThat(first.events()).hasSizeLessThan(events.size());
+    assertThat(first.events()).containsExactlyElementsOf(events.subList(0, first.events().size()));
+    queue.remove(first);
+    final List<Event> rest = readAll(queue);
+    assertThat(rest).containsExactlyElementsOf(events.subList(first.events().size(), 100));
+  }
+
+  @Test
+  void eventsAreRejectedWhenTheQueueIsFull() throws IOException {
+    final EventSpillQueue queue = EventSpillQueue.open(directory, 512, 1024);
+    final List<Event> events = events(100);
+    final long appended = events.stream().filter(event -> queue.append(List.of(event))).count();
+
+    assertThat(appended).isLessThan(events.size());
+    assertThat(queue.sizeBytes()).isLessThanOrEqualTo(1024);
+    assertThat(readAll(queue)).containsExactlyElementsOf(events.subList(0, (int) appended));
+    assertThat(queue.append(events.subList(0, 1))).isTrue();
+  }
+
+  @Test
+  void truncatedSegmentIsReadUpToTheLastCompleteEvent() throws IOException {
+    final List<Event> events = events(3);
+    final EventSpillQueue queue = EventSpillQueue.open(directory, 1024, 1024 * 1024);
+    queue.append(events);
+    queue.close();
+    final Path segment;
+    try (var files = Files.list(directory)) {
+      segment = files.findFirst().orElseThrow();
+    }
+    final long size = Files.size(segment);
+    try (var channel = java.nio.channels.FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      channel.truncate(size - 3);
+    }
+
+    final EventSpillQueue reopened = EventSpillQueue.open(directory, 1024, 1024 * 1024);
+    assertThat(reopened.oldest().orElseThrow().events()).containsExactlyElementsOf(events(2));
+  }
+
+  private static List<Event> readAll(EventSpillQueue queue) {
+    final List<Event> events = new ArrayList<>();
+    Optional<EventSpillQueue.Segment> segment;
+    while ((segment = queue.oldest()).isPresent()) {
+      events.addAll(segment.get().events());
+      queue.remove(segment.get());
+    }
+    return events;
+  }
+
+  private static List<Event> events(int count) {
+    return IntStream.range(0, count)
+        .mapToObj(
+            i ->
+                EventUploader.event(
+                        "navigate",
+                        ConfidenceValue.of(Map.of("targeting_key", ConfidenceValue.of("user-1"))),
+                        Optional.of(ConfidenceValue.of(Map.of("index", ConfidenceValue.of(i)))))
+                    .build())
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,105 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.protobuf.ByteString;
+import com.spotify.confidence.shaded.flags.resolver.v1.AppliedFlag;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class FlagApplierImplTest {
+
+  private static final ByteString TOKEN_A = ByteString.copyFromUtf8("token-a");
+  private static final ByteString TOKEN_B = ByteString.copyFromUtf8("token-b");
+
+  private final Map<ByteString, List<List<AppliedFlag>>> requests = new ConcurrentHashMap<>();
+
+  private CompletableFuture<?> applyFlags(ByteString resolveToken, List<AppliedFlag> flags) {
+    requests.computeIfAbsent(resolveToken, token -> new ArrayList<>()).add(flags);
+    return CompletableFuture.completedFuture(null);
+  }
+
+  @Test
+  void appliesAreCoalescedPerResolveToken() {
+    final FlagApplierImpl applier =
+        new FlagApplierImpl(this::applyFlags, new FakeClock(), 100, Duration.ofMinutes(1));
+    applier.apply("flags/a", TOKEN_A);
+    applier.apply("flags/b", TOKEN_A);
+    applier.apply("flags/a", TOKEN_A);
+    applier.apply("flags/a", TOKEN_B);
+    assertThat(requests).isEmpty();
+
+    applier.close();
+
+    assertThat(requests.get(TOKEN_A)).hasSize(1);
+    assertThat(flagNames(requests.get(TOKEN_A).get(0))).containsExactly("flags/a", "flags/b");
+    assertThat(requests.get(TOKEN_B)).hasSize(1);
+    assertThat(flagNames(requests.get(TOKEN_B).get(0))).containsExactly("flags/a");
+  }
+
+  @Test
+  void appliesAreSentWhenBatchIsFull() throws InterruptedException {
+    final FlagApplierImpl applier =
+        new FlagApplierImpl(this::applyFlags, new FakeClock(), 2, Duration.ofMinutes(1));
+    applier.apply("flags/a", TOKEN_A);
+    applier.apply("flags/b", TOKEN_A);
+
+    final int timeoutCalls = 10;
+    int calls = 0;
+    while (calls++ <= timeoutCalls && requests.isEmpty()) {
+      Thread.sleep(50);
+    }
+    assertThat(requests.get(TOKEN_A)).hasSize(1);
+    applier.close();
+    assertThat(requests.get(TOKEN_A)).hasSize(1);
+  }
+
+  @Test
+  void appliesAreSentOnFlushInterval() throws InterruptedException {
+    final FlagApplierImpl applier =
+        new FlagApplierImpl(this::applyFlags, new FakeClock(), 100, Duration.ofMillis(50));
+    applier.apply("flags/a", TOKEN_A);
+
+    Thread.sleep(300);
+    assertThat(requests.get(TOKEN_A)).hasSize(1);
+    applier.close();
+  }
+
+  @Test
+  void appliesAfterCloseAreDropped() {
+    final FlagApplierImpl applier =
+        new FlagApplierImpl(this::applyFlags, new FakeClock(), 100, Duration.ofMinutes(1));
+    applier.close();
+    applier.apply("flags/a", TOKEN_A);
+    applier.flush();
+    assertThat(requests).isEmpty();
+  }
+
+  @Test
+  void appliesRacingWithCloseAreDropped() {
+    final AtomicReference<FlagApplierImpl> applier = new AtomicReference<>();
+    // closes the applier after apply has checked that it's open
+    final Clock closingClock =
+        () -> {
+          applier.get().close();
+          return Instant.EPOCH;
+        };
+    applier.set(new FlagApplierImpl(this::applyFlags, closingClock, 1, Duration.ofMinutes(1)));
+
+    applier.get().apply("flags/a", TOKEN_A);
+
+    assertThat(requests).isEmpty();
+  }
+
+  private static List<String> flagNames(List<AppliedFlag> flags) {
+    return flags.stream().map(AppliedFlag::getFlag).collect(Collectors.toList());
+  }
+}
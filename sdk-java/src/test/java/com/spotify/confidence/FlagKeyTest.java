@@ -0,0 +1,55 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.spotify.confidence.ConfidenceUtils.FlagPath;
+import com.spotify.confidence.Exceptions.IllegalValuePath;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class FlagKeyTest {
+
+  @Test
+  void keyIsParsedOnce() {
+    final FlagKey<String> flag = Confidence.flag("checkout.button.color", String.class);
+
+    assertThat(flag.getKey()).isEqualTo("checkout.button.color");
+    assertThat(flag.getType()).isEqualTo(String.class);
+    assertThat(flag.requestFlagName()).isEqualTo("flags/checkout");
+    assertThat(flag.flagPath().getFlag()).isEqualTo("checkout");
+    assertThat(flag.flagPath().getPath()).containsExactly("button", "color");
+  }
+
+  @Test
+  void handlesAreInterned() {
+    assertThat(Confidence.flag("checkout.button", ConfidenceValue.Struct.class))
+        .isSameAs(Confidence.flag("checkout.button", ConfidenceValue.Struct.class));
+    assertThat(Confidence.flag("checkout.enabled", Boolean.class))
+        .isNotEqualTo(Confidence.flag("checkout.enabled", String.class));
+  }
+
+  @Test
+  void malformedKeysAndUnsupportedTypesAreRejected() {
+    assertThatThrownBy(() -> Confidence.flag("...", String.class))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Illegal path string '...'");
+    assertThatThrownBy(() -> Confidence.flag("flag", Long.class))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Illegal value type: class java.lang.Long");
+  }
+
+  @Test
+  void pathsAreSplitLikeStringSplit() throws IllegalValuePath {
+    for (String key :
+        List.of("flag", "", "flag.a", "flag.a.b", "flag..a", "flag.a.", ".a", "a..")) {
+      final String[] parts = key.split("\\.");
+      final FlagPath flagPath = FlagPath.getPath(key);
+      assertThat(flagPath.getFlag()).as(key).isEqualTo(parts[0]);
+      assertThat(flagPath.getPath())
+          .as(key)
+          .containsExactly(List.of(parts).subList(1, parts.length).toArray(new String[0]));
+    }
+    assertThatThrownBy(() -> FlagPath.getPath(".")).isInstanceOf(IllegalValuePath.class);
+  }
+}
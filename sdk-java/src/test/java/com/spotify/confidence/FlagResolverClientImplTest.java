@@ -0,0 +1,355 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.Exceptions.ValueNotFound;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsResponse;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolvedFlag;
+import com.spotify.confidence.shaded.flags.types.v1.FlagSchema;
+import com.spotify.confidence.shaded.flags.types.v1.FlagSchema.IntFlagSchema;
+import com.spotify.confidence.shaded.flags.types.v1.FlagSchema.StructFlagSchema;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class FlagResolverClientImplTest {
+
+  private static final ResolvedFlag RESOLVED_FLAG =
+      ResolvedFlag.newBuilder()
+          .setFlag("flags/flag")
+          .setVariant("flags/flag/variants/big")
+          .setValue(Struct.newBuilder().putFields("size", Values.of(10)))
+          .setFlagSchema(
+              StructFlagSchema.newBuilder()
+                  .putSchema(
+                      "size",
+                      FlagSchema.newBuilder()
+                          .setIntSchema(IntFlagSchema.getDefaultInstance())
+                          .build()))
+          .build();
+
+  private final CountingFlagResolver flagResolver = new CountingFlagResolver();
+  private final AtomicLong nanos = new AtomicLong();
+
+  @Test
+  void resolvesAreCachedPerContext() {
+    final FlagResolverClientImpl client = new FlagResolverClientImpl(flagResolver, cache(10), null);
+    final ConfidenceValue.Struct context =
+        ConfidenceValue.of(Map.of("user", ConfidenceValue.of("a")));
+
+    client.resolveFlags(List.of("flags/flag"), context, false).join();
+    client.resolveFlags(List.of("flags/flag"), context, false).join();
+    client
+        .resolveFlags(
+            List.of("flags/flag"),
+            ConfidenceValue.of(Map.of("user", ConfidenceValue.of("b"))),
+            false)
+        .join();
+
+    assertThat(flagResolver.contexts).hasSize(2);
+    final CacheStats stats = client.resolveCacheStats().orElseThrow();
+    assertThat(stats.hitCount()).isEqualTo(1);
+    assertThat(stats.missCount()).isEqualTo(2);
+  }
+
+  @Test
+  void reorderedBatchesShareCachedResolves() {
+    final FlagResolverClientImpl client = new FlagResolverClientImpl(flagResolver, cache(10), null);
+
+    client.resolveFlags(List.of("flags/a", "flags/b"), ConfidenceValue.Struct.EMPTY, false).join();
+    client.resolveFlags(List.of("flags/b", "flags/a"), ConfidenceValue.Struct.EMPTY, false).join();
+    client.resolveFlags(List.of("flags/a"), ConfidenceValue.Struct.EMPTY, false).join();
+
+    assertThat(flagResolver.contexts).hasSize(2);
+    final CacheStats stats = client.resolveCacheStats().orElseThrow();
+    assertThat(stats.hitCount()).isEqualTo(1);
+    assertThat(stats.missCount()).isEqualTo(2);
+  }
+
+  @Test
+  void decodedValuesAreKeptPerCachedResolvedFlag() throws ValueNotFound {
+    final FlagResolverClientImpl client = new FlagResolverClientImpl(flagResolver, cache(10), null);
+    final ConfidenceValue value = client.flagValue(RESOLVED_FLAG, List.of("size"));
+
+    assertThat(client.flagValue(RESOLVED_FLAG, List.of("size"))).isSameAs(value);
+    assertThat(
+            client.flagValue(
+                RESOLVED_FLAG.toBuilder().setVariant("other").build(), List.of("size")))
+        .isEqualTo(value)
+        .isNotSameAs(value);
+  }
+
+  @Test
+  void decodedValuesAreNotKeptWithoutResolveCache() throws ValueNotFound {
+    final FlagResolverClientImpl client = new FlagResolverClientImpl(flagResolver, null, null);
+    final ConfidenceValue value = client.flagValue(RESOLVED_FLAG, List.of("size"));
+
+    assertThat(client.flagValue(RESOLVED_FLAG, List.of("size")))
+        .isEqualTo(value)
+        .isNotSameAs(value);
+  }
+
+  @Test
+  void openFeatureContextIsMergedBeforeCaching() {
+    final FlagResolverClientImpl client = new FlagResolverClientImpl(flagResolver, cache(10), null);
+
+    client
+        .resolveFlags(
+            List.of("flags/flag"),
+            ConfidenceValue.of(
+                Map.of(
+                    "user",
+                    ConfidenceValue.of("a"),
+                    FlagResolverClientImpl.OPEN_FEATURE_RESOLVE_CONTEXT_KEY,
+                    ConfidenceValue.of(Map.of("country", ConfidenceValue.of("SE"))))),
+            true)
+        .join();
+    client
+        .resolveFlags(
+            List.of("flags/flag"),
+            ConfidenceValue.of(
+                Map.of("user", ConfidenceValue.of("a"), "country", ConfidenceValue.of("SE"))),
+            true)
+        .join();
+
+    assertThat(flagResolver.contexts).hasSize(1);
+    assertThat(client.resolveCacheStats().orElseThrow().hitCount()).isEqualTo(1);
+  }
+
+  @Test
+  void cachedResolvesExpireAndAreEvicted() {
+    final FlagResolverClientImpl client = new FlagResolverClientImpl(flagResolver, cache(1), null);
+
+    client.resolveFlags(List.of("flags/a"), ConfidenceValue.Struct.EMPTY, false).join();
+    client.resolveFlags(List.of("flags/b"), ConfidenceValue.Struct.EMPTY, false).join();
+    client.resolveFlags(List.of("flags/b"), ConfidenceValue.Struct.EMPTY, false).join();
+    nanos.addAndGet(Duration.ofMinutes(2).toNanos());
+    client.resolveFlags(List.of("flags/b"), ConfidenceValue.Struct.EMPTY, false).join();
+
+    assertThat(flagResolver.contexts).hasSize(3);
+    final CacheStats stats = client.resolveCacheStats().orElseThrow();
+    assertThat(stats.hitCount()).isEqualTo(1);
+    assertThat(stats.evictionCount()).isEqualTo(2);
+  }
+
+  @Test
+  void refreshBypassesAndUpdatesCache() {
+    final FlagResolverClientImpl client = new FlagResolverClientImpl(flagResolver, cache(10), null);
+    client.resolveFlags(List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false).join();
+
+    final ResolveFlagsResponse refreshed =
+        ResolveFlagsResponse.newBuilder().setResolveId("resolve-2").build();
+    flagResolver.response = CompletableFuture.completedFuture(refreshed);
+    assertThat(
+            client.refreshFlags(List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false).join())
+        .isEqualTo(refreshed);
+    assertThat(
+            client.resolveFlags(List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false).join())
+        .isEqualTo(refreshed);
+
+    assertThat(flagResolver.contexts).hasSize(2);
+    assertThat(client.resolveCacheStats().orElseThrow().hitCount()).isEqualTo(1);
+  }
+
+  @Test
+  void concurrentIdenticalResolvesShareOneRequest() {
+    final CompletableFuture<ResolveFlagsResponse> response = new CompletableFuture<>();
+    flagResolver.response = response;
+    final FlagResolverClientImpl client = new FlagResolverClientImpl(flagResolver);
+    final ConfidenceValue.Struct context =
+        ConfidenceValue.of(Map.of("user", ConfidenceValue.of("a")));
+
+    final CompletableFuture<ResolveFlagsResponse> first =
+        client.resolveFlags(List.of("flags/flag"), context, false);
+    final CompletableFuture<ResolveFlagsResponse> second =
+        client.resolveFlags(List.of("flags/flag"), context, false);
+    final CompletableFuture<ResolveFlagsResponse> otherContext =
+        client.resolveFlags(List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false);
+    assertThat(flagResolver.contexts).hasSize(2);
+
+    second.cancel(true);
+    response.complete(ResolveFlagsResponse.getDefaultInstance());
+    assertThat(first.join()).isEqualTo(ResolveFlagsResponse.getDefaultInstance());
+    assertThat(otherContext.join()).isEqualTo(ResolveFlagsResponse.getDefaultInstance());
+
+    client.resolveFlags(List.of("flags/flag"), context, false).join();
+    assertThat(flagResolver.contexts).hasSize(3);
+  }
+
+  @Test
+  void failedResolvesAreNotShared() {
+    final CompletableFuture<ResolveFlagsResponse> response = new CompletableFuture<>();
+    flagResolver.response = response;
+    final FlagResolverClientImpl client = new FlagResolverClientImpl(flagResolver);
+
+    final CompletableFuture<ResolveFlagsResponse> first =
+        client.resolveFlags(List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false);
+    final CompletableFuture<ResolveFlagsResponse> second =
+        client.resolveFlags(List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false);
+    response.completeExceptionally(new RuntimeException("unavailable"));
+    assertThat(first).isCompletedExceptionally();
+    assertThat(second).isCompletedExceptionally();
+
+    flagResolver.response =
+        CompletableFuture.completedFuture(ResolveFlagsResponse.getDefaultInstance());
+    assertThat(
+            client.resolveFlags(List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false).join())
+        .isEqualTo(ResolveFlagsResponse.getDefaultInstance());
+    assertThat(flagResolver.contexts).hasSize(2);
+  }
+
+  @Test
+  void cacheLookupsAreReportedToMetrics() {
+    final List<Boolean> lookups = new ArrayList<>();
+    final FlagResolverClientImpl client =
+        new FlagResolverClientImpl(
+            flagResolver,
+            cache(10),
+            null,
+            null,
+            new ConfidenceMetrics() {
+              @Override
+              public void resolveCacheLookup(boolean hit) {
+                lookups.add(hit);
+              }
+            });
+
+    client.resolveFlags(List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false).join();
+    client.resolveFlags(List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false).join();
+
+    assertThat(lookups).containsExactly(false, true);
+  }
+
+  @Test
+  void noStatsWithoutCache() {
+    final FlagResolverClientImpl client = new FlagResolverClientImpl(flagResolver);
+    client.resolveFlags(List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false).join();
+    client.resolveFlags(List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false).join();
+
+    assertThat(flagResolver.contexts).hasSize(2);
+    assertThat(client.resolveCacheStats()).isEmpty();
+  }
+
+  @Test
+  void lastKnownResolveIsKeptPerContext() {
+    final FlagResolverClientImpl client =
+        new FlagResolverClientImpl(
+            flagResolver,
+            null,
+            null,
+            new ResolveHistory(
+                10, Duration.ofMinutes(1), () -> Instant.EPOCH.plusNanos(nanos.get())));
+    final ResolveFlagsResponse resolved =
+        ResolveFlagsResponse.newBuilder().setResolveId("resolve-1").build();
+    flagResolver.response = CompletableFuture.completedFuture(resolved);
+    final ConfidenceValue.Struct context =
+        ConfidenceValue.of(Map.of("user", ConfidenceValue.of("a")));
+
+    assertThat(client.lastKnownResolve(List.of("flags/flag"), context, false)).isEmpty();
+    client.resolveFlags(List.of("flags/flag"), context, false).join();
+
+    flagResolver.response = CompletableFuture.failedFuture(new RuntimeException("unavailable"));
+    assertThat(client.resolveFlags(List.of("flags/flag"), context, false))
+        .isCompletedExceptionally();
+    assertThat(client.lastKnownResolve(List.of("flags/flag"), context, false)).contains(resolved);
+    assertThat(client.lastKnownResolve(List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false))
+        .isEmpty();
+
+    nanos.addAndGet(Duration.ofMinutes(2).toNanos());
+    assertThat(client.lastKnownResolve(List.of("flags/flag"), context, false)).isEmpty();
+  }
+
+  @Test
+  void perCallDeadlineIsSentWithTheResolve() {
+    final FlagResolverClientImpl client = new FlagResolverClientImpl(flagResolver);
+
+    client
+        .resolveFlags(
+            List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false, Duration.ofSeconds(30))
+        .join();
+    client.resolveFlags(List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false).join();
+
+    assertThat(flagResolver.contexts).hasSize(2);
+    assertThat(flagResolver.deadlines).containsExactly(Duration.ofSeconds(30));
+  }
+
+  @Test
+  void callsJoiningAResolveInFlightStopWaitingAtTheirDeadline() {
+    final FlagResolverClientImpl client = new FlagResolverClientImpl(flagResolver);
+    final CompletableFuture<ResolveFlagsResponse> response = new CompletableFuture<>();
+    flagResolver.response = response;
+
+    final CompletableFuture<ResolveFlagsResponse> first =
+        client.resolveFlags(List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false);
+    final CompletableFuture<ResolveFlagsResponse> joined =
+        client.resolveFlags(
+            List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false, Duration.ofMillis(10));
+
+    assertThatThrownBy(joined::join).hasCauseInstanceOf(TimeoutException.class);
+    assertThat(flagResolver.contexts).hasSize(1);
+    assertThat(first).isNotDone();
+    response.complete(ResolveFlagsResponse.getDefaultInstance());
+    assertThat(first).isCompleted();
+  }
+
+  @Test
+  void noLastKnownResolveWithoutHistory() {
+    final FlagResolverClientImpl client = new FlagResolverClientImpl(flagResolver);
+    client.resolveFlags(List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false).join();
+
+    assertThat(client.lastKnownResolve(List.of("flags/flag"), ConfidenceValue.Struct.EMPTY, false))
+        .isEmpty();
+  }
+
+  private com.google.common.cache.Cache<FlagResolverClientImpl.ResolveKey, ResolveFlagsResponse>
+      cache(long maximumSize) {
+    return CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(Duration.ofMinutes(1))
+        .ticker(
+            new Ticker() {
+              @Override
+              public long read() {
+                return nanos.get();
+              }
+            })
+        .recordStats()
+        .build();
+  }
+
+  static class CountingFlagResolver implements FlagResolver {
+    final List<Struct> contexts = new ArrayList<>();
+    final List<Duration> deadlines = new ArrayList<>();
+    CompletableFuture<ResolveFlagsResponse> response =
+        CompletableFuture.completedFuture(ResolveFlagsResponse.getDefaultInstance());
+
+    @Override
+    public void close() {}
+
+    @Override
+    public CompletableFuture<ResolveFlagsResponse> resolve(
+        List<String> flags, Struct context, Boolean isProvider) {
+      contexts.add(context);
+      return response;
+    }
+
+    @Override
+    public CompletableFuture<ResolveFlagsResponse> resolve(
+        List<String> flags, Struct context, Boolean isProvider, Duration deadline) {
+      deadlines.add(deadline);
+      return resolve(flags, context, isProvider);
+    }
+  }
+}
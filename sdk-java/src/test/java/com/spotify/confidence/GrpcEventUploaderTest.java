@@ -2,6 +2,7 @@ package com.spotify.confidence;
 
 import static com.spotify.confidence.EventUploader.event;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.protobuf.Timestamp;
@@ -11,7 +12,10 @@ import com.spotify.confidence.events.v1.EventsServiceGrpc;
 import com.spotify.confidence.events.v1.PublishEventsRequest;
 import com.spotify.confidence.events.v1.PublishEventsResponse;
 import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
 import io.grpc.Server;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
 import io.grpc.inprocess.InProcessChannelBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.stub.StreamObserver;
@@ -29,6 +33,7 @@ class GrpcEventUploaderTest {
   private Server server;
   private ManagedChannel channel;
   private FakedEventsService fakedEventsService;
+  private final List<String> requestEncodings = new ArrayList<>();
 
   private static FakeClock fakeClock = new FakeClock();
 
@@ -44,7 +49,7 @@ class GrpcEventUploaderTest {
     server =
         InProcessServerBuilder.forName(serverName)
             .directExecutor()
-            .addService(fakedEventsService)
+            .addService(ServerInterceptors.intercept(fakedEventsService, recordEncoding()))
             .build()
             .start();
 
@@ -186,6 +191,47 @@ class GrpcEventUploaderTest {
     assertThat(result).isFalse();
   }
 
+  @Test
+  public void testRequestsAreCompressedWhenConfigured() {
+    final GrpcEventUploader gzipUploader =
+        new GrpcEventUploader(
+            "my-client-secret", fakeClock, channel, "gzip", ConfidenceMetrics.NOOP);
+    final var batch =
+        List.of(event("event1", contextStruct("1"), Optional.of(messageStruct("1"))).build());
+
+    uploader.upload(batch);
+    gzipUploader.upload(batch);
+
+    assertThat(fakedEventsService.requests).hasSize(2);
+    assertThat(fakedEventsService.requests.get(1)).isEqualTo(fakedEventsService.requests.get(0));
+    assertThat(requestEncodings).containsExactly("identity", "gzip");
+  }
+
+  @Test
+  public void testUnknownCompressionIsRejected() {
+    assertThatThrownBy(
+            () ->
+                new GrpcEventUploader(
+                    "my-client-secret", fakeClock, channel, "zip", ConfidenceMetrics.NOOP))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Unknown compression: zip");
+  }
+
+  private ServerInterceptor recordEncoding() {
+    final Metadata.Key<String> encodingKey =
+        Metadata.Key.of("grpc-encoding", Metadata.ASCII_STRING_MARSHALLER);
+    return new ServerInterceptor() {
+      @Override
+      public <ReqT, RespT> io.grpc.ServerCall.Listener<ReqT> interceptCall(
+          io.grpc.ServerCall<ReqT, RespT> call,
+          Metadata headers,
+          io.grpc.ServerCallHandler<ReqT, RespT> next) {
+        requestEncodings.add(Optional.ofNullable(headers.get(encodingKey)).orElse("identity"));
+        return next.startCall(call, headers);
+      }
+    };
+  }
+
   private ConfidenceValue.Struct contextStruct(String s) {
     return ConfidenceValue.of(ImmutableMap.of("contextKey", ConfidenceValue.of("value_" + s)));
   }
@@ -0,0 +1,82 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.Struct;
+import com.spotify.confidence.shaded.flags.resolver.v1.FlagResolverServiceGrpc;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsRequest;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsResponse;
+import io.grpc.Context;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class GrpcFlagResolverTest {
+
+  // the time left until the deadline of the last resolve request, as seen by the server
+  private final AtomicLong remainingMillis = new AtomicLong();
+  private Server server;
+  private GrpcFlagResolver flagResolver;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    final String serverName = InProcessServerBuilder.generateName();
+    server =
+        InProcessServerBuilder.forName(serverName)
+            .directExecutor()
+            .addService(
+                new FlagResolverServiceGrpc.FlagResolverServiceImplBase() {
+                  @Override
+                  public void resolveFlags(
+                      ResolveFlagsRequest request,
+                      StreamObserver<ResolveFlagsResponse> responseObserver) {
+                    remainingMillis.set(
+                        Context.current().getDeadline().timeRemaining(TimeUnit.MILLISECONDS));
+                    responseObserver.onNext(ResolveFlagsResponse.getDefaultInstance());
+                    responseObserver.onCompleted();
+                  }
+                })
+            .build()
+            .start();
+    flagResolver =
+        new GrpcFlagResolver(
+            "secret",
+            InProcessChannelBuilder.forName(serverName).directExecutor().build(),
+            true,
+            Duration.ofSeconds(1),
+            MoreExecutors.directExecutor(),
+            ConfidenceMetrics.NOOP);
+  }
+
+  @AfterEach
+  void tearDown() {
+    flagResolver.close();
+    server.shutdownNow();
+  }
+
+  @Test
+  void resolvesUseTheResolveDeadline() {
+    flagResolver.resolve(List.of("flags/flag"), Struct.getDefaultInstance(), false).join();
+
+    assertThat(remainingMillis.get()).isBetween(1L, 1000L);
+  }
+
+  @Test
+  void perCallDeadlineReplacesTheResolveDeadline() {
+    flagResolver
+        .resolve(List.of("flags/flag"), Struct.getDefaultInstance(), false, Duration.ofSeconds(30))
+        .join();
+
+    assertThat(remainingMillis.get()).isGreaterThan(1000L);
+  }
+}
@@ -0,0 +1,50 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+
+class GrpcUtilTest {
+
+  @Test
+  void completesOnCallingThreadByDefault() {
+    final SettableFuture<String> listenableFuture = SettableFuture.create();
+    final CompletableFuture<String> future =
+        GrpcUtil.toCompletableFuture(listenableFuture)
+            .thenApply(value -> value + "@" + Thread.currentThread().getName());
+
+    listenableFuture.set("value");
+
+    assertThat(future.join()).isEqualTo("value@" + Thread.currentThread().getName());
+  }
+
+  @Test
+  void completesOnExecutor() {
+    final ExecutorService executor =
+        Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "callback-thread"));
+    try {
+      final SettableFuture<String> listenableFuture = SettableFuture.create();
+      final CompletableFuture<String> future =
+          GrpcUtil.toCompletableFuture(listenableFuture, executor)
+              .thenApply(value -> value + "@" + Thread.currentThread().getName());
+
+      listenableFuture.set("value");
+
+      assertThat(future.join()).isEqualTo("value@callback-thread");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void cancellationIsPropagated() {
+    final SettableFuture<String> listenableFuture = SettableFuture.create();
+    GrpcUtil.toCompletableFuture(listenableFuture).cancel(true);
+
+    assertThat(listenableFuture.isCancelled()).isTrue();
+  }
+}
@@ -0,0 +1,57 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.protobuf.Struct;
+import com.spotify.confidence.FlagResolverClientImpl.ResolveKey;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ResolveHistoryTest {
+
+  private static final ResolveKey KEY =
+      new ResolveKey(List.of("flags/flag"), Struct.getDefaultInstance(), false);
+  private static final ResolveFlagsResponse RESPONSE =
+      ResolveFlagsResponse.newBuilder().setResolveId("resolve-1").build();
+
+  private Instant now = Instant.ofEpochSecond(1_700_000_000);
+  private final ResolveHistory history = new ResolveHistory(10, Duration.ofMinutes(10), () -> now);
+
+  @Test
+  void resolvesAreServedUntilTheMaxStaleness() {
+    history.put(KEY, RESPONSE);
+
+    now = now.plus(Duration.ofMinutes(10));
+    assertThat(history.get(KEY)).contains(RESPONSE);
+    now = now.plusMillis(1);
+    assertThat(history.get(KEY)).isEmpty();
+  }
+
+  @Test
+  void restoredResolvesKeepTheirAge() {
+    history.restore(KEY, new ResolveHistory.Entry(RESPONSE, now.minus(Duration.ofMinutes(8))));
+
+    assertThat(history.get(KEY)).contains(RESPONSE);
+    assertThat(history.asMap().get(KEY).resolveTime()).isEqualTo(now.minus(Duration.ofMinutes(8)));
+    now = now.plus(Duration.ofMinutes(3));
+    assertThat(history.get(KEY)).isEmpty();
+  }
+
+  @Test
+  void resolvesOlderThanTheMaxStalenessAreNotRestored() {
+    history.restore(KEY, new ResolveHistory.Entry(RESPONSE, now.minus(Duration.ofMinutes(11))));
+
+    assertThat(history.get(KEY)).isEmpty();
+    assertThat(history.asMap()).isEmpty();
+  }
+
+  @Test
+  void maxStalenessMustBePositive() {
+    assertThrows(
+        IllegalArgumentException.class, () -> new ResolveHistory(10, Duration.ZERO, Instant::now));
+  }
+}
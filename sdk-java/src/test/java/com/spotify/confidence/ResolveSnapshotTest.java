@@ -0,0 +1,148 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.FlagResolverClientImpl.ResolveKey;
+import com.spotify.confidence.shaded.flags.resolver.v1.ResolveFlagsResponse;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResolveSnapshotTest {
+
+  @TempDir Path directory;
+
+  @Test
+  void snapshotRoundTrip() throws IOException {
+    final Path file = directory.resolve("snapshot.pb");
+    final Map<ResolveKey, ResolveHistory.Entry> resolves = new LinkedHashMap<>();
+    resolves.put(
+        new ResolveKey(
+            List.of("flags/a", "flags/b"),
+            Struct.newBuilder().putFields("user", Values.of("a")).build(),
+            false),
+        new ResolveHistory.Entry(
+            ResolveFlagsResponse.newBuilder().setResolveId("resolve-1").build(),
+            Instant.ofEpochSecond(1_700_000_000, 123_000_000)));
+    resolves.put(
+        new ResolveKey(List.of("flags/a"), Struct.getDefaultInstance(), true),
+        new ResolveHistory.Entry(
+            ResolveFlagsResponse.newBuilder().setResolveId("resolve-2").build(),
+            Instant.ofEpochSecond(1_700_000_060)));
+
+    ResolveSnapshot.write(file, resolves);
+
+    assertThat(ResolveSnapshot.read(file)).containsExactlyEntriesOf(resolves);
+    try (var files = Files.list(directory)) {
+      assertThat(files).containsExactly(file);
+    }
+  }
+
+  @Test
+  void missingSnapshotIsEmpty() throws IOException {
+    assertThat(ResolveSnapshot.read(directory.resolve("missing.pb"))).isEmpty();
+  }
+
+  @Test
+  void invalidSnapshotFails() throws IOException {
+    final Path file = directory.resolve("snapshot.pb");
+    Files.write(file, new byte[] {2, 5, 1});
+
+    assertThrows(IOException.class, () -> ResolveSnapshot.read(file));
+  }
+
+  @Test
+  void clientIsWarmedFromSnapshot() throws IOException {
+    final Path file = directory.resolve("snapshot.pb");
+    ResolveSnapshot.write(
+        file,
+        Map.of(
+            new ResolveKey(List.of("flags/flag"), Struct.getDefaultInstance(), false),
+            new ResolveHistory.Entry(
+                ResolverClientTestUtils.generateSampleResponse(List.of()), Instant.now())));
+
+    // no server is listening on the channel, so every resolve fails
+    final Confidence confidence =
+        Confidence.builder("secret")
+            .flagResolverManagedChannel(
+                InProcessChannelBuilder.forName(InProcessServerBuilder.generateName()).build())
+            .snapshot(file)
+            .build();
+    final FlagEvaluation<Integer> evaluation = confidence.getEvaluation("flag.prop-E", 20);
+    confidence.close();
+
+    assertThat(evaluation.getValue()).isEqualTo(50);
+    assertThat(evaluation.getReason()).isEqualTo(Confidence.STALE_REASON);
+    assertThat(ResolveSnapshot.read(file)).hasSize(1);
+  }
+
+  @Test
+  void snapshotIsNotServedAsCachedResolve() throws IOException {
+    final Path file = directory.resolve("snapshot.pb");
+    ResolveSnapshot.write(
+        file,
+        Map.of(
+            new ResolveKey(List.of("flags/flag"), Struct.getDefaultInstance(), false),
+            new ResolveHistory.Entry(
+                ResolverClientTestUtils.generateSampleResponse(List.of()), Instant.now())));
+
+    final Confidence confidence =
+        Confidence.builder("secret")
+            .flagResolverManagedChannel(
+                InProcessChannelBuilder.forName(InProcessServerBuilder.generateName()).build())
+            .resolveCache(100, Duration.ofMinutes(1))
+            .snapshot(file)
+            .build();
+    final FlagEvaluation<Integer> evaluation = confidence.getEvaluation("flag.prop-E", 20);
+    confidence.close();
+
+    assertThat(evaluation.getValue()).isEqualTo(50);
+    assertThat(evaluation.getReason()).isEqualTo(Confidence.STALE_REASON);
+  }
+
+  @Test
+  void resolvesOlderThanTheMaxStalenessAreNotRestored() throws IOException {
+    final Path file = directory.resolve("snapshot.pb");
+    ResolveSnapshot.write(
+        file,
+        Map.of(
+            new ResolveKey(List.of("flags/flag"), Struct.getDefaultInstance(), false),
+            new ResolveHistory.Entry(
+                ResolverClientTestUtils.generateSampleResponse(List.of()),
+                Instant.now().minus(Duration.ofHours(2)))));
+
+    final Confidence confidence =
+        Confidence.builder("secret")
+            .flagResolverManagedChannel(
+                InProcessChannelBuilder.forName(InProcessServerBuilder.generateName()).build())
+            .resolveHistory(100, Duration.ofHours(1))
+            .snapshot(file)
+            .build();
+    final FlagEvaluation<Integer> evaluation = confidence.getEvaluation("flag.prop-E", 20);
+    confidence.close();
+
+    assertThat(evaluation.getValue()).isEqualTo(20);
+    assertThat(evaluation.getReason()).isEqualTo("ERROR");
+    assertThat(ResolveSnapshot.read(file)).isEmpty();
+  }
+
+  @Test
+  void snapshotsOfOtherVersionsAreNotRead() throws IOException {
+    final Path file = directory.resolve("snapshot.pb");
+    Files.write(file, new byte[] {1});
+
+    assertThrows(IOException.class, () -> ResolveSnapshot.read(file));
+  }
+}
@@ -24,8 +24,8 @@ public class ResolverClientTestUtils {
 
     @Override
     public CompletableFuture<ResolveFlagsResponse> resolveFlags(
-        String flag, ConfidenceValue.Struct context, Boolean isProvider) {
-      resolves.put(flag, context);
+        List<String> flags, ConfidenceValue.Struct context, Boolean isProvider) {
+      flags.forEach(flag -> resolves.put(flag, context));
       return CompletableFuture.completedFuture(response);
     }
 
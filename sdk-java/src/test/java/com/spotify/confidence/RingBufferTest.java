@@ -0,0 +1,75 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class RingBufferTest {
+
+  @Test
+  void capacityIsRoundedUpToPowerOfTwo() {
+    assertThat(new RingBuffer<>(1).capacity()).isEqualTo(1);
+    assertThat(new RingBuffer<>(5).capacity()).isEqualTo(8);
+    assertThat(new RingBuffer<>(8).capacity()).isEqualTo(8);
+    assertThatThrownBy(() -> new RingBuffer<>(0)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void offerFailsWhenFullAndDrainFreesSlots() {
+    final RingBuffer<Integer> buffer = new RingBuffer<>(4);
+    for (int i = 0; i < 4; i++) {
+      assertThat(buffer.offer(i)).isTrue();
+    }
+    assertThat(buffer.offer(4)).isFalse();
+    assertThat(buffer.size()).isEqualTo(4);
+
+    final List<Integer> drained = new ArrayList<>();
+    assertThat(buffer.drain(drained::add, 3)).isEqualTo(3);
+    assertThat(drained).containsExactly(0, 1, 2);
+
+    // the ring wraps around into the freed slots
+    assertThat(buffer.offer(4)).isTrue();
+    assertThat(buffer.offer(5)).isTrue();
+    assertThat(buffer.drain(drained::add, 10)).isEqualTo(3);
+    assertThat(drained).containsExactly(0, 1, 2, 3, 4, 5);
+    assertThat(buffer.isEmpty()).isTrue();
+    assertThat(buffer.drain(drained::add, 10)).isZero();
+  }
+
+  @Test
+  void concurrentProducersLoseNothing() {
+    final RingBuffer<Integer> buffer = new RingBuffer<>(16);
+    final int producers = 4;
+    final int perProducer = 10_000;
+    final CompletableFuture<?>[] tasks = new CompletableFuture[producers];
+    for (int p = 0; p < producers; p++) {
+      final int offset = p * perProducer;
+      tasks[p] =
+          CompletableFuture.runAsync(
+              () -> {
+                for (int i = 0; i < perProducer; i++) {
+                  while (!buffer.offer(offset + i)) {
+                    Thread.yield();
+                  }
+                }
+              });
+    }
+
+    final List<Integer> drained = new ArrayList<>();
+    while (drained.size() < producers * perProducer) {
+      buffer.drain(drained::add, 16);
+    }
+    CompletableFuture.allOf(tasks).join();
+
+    assertThat(drained)
+        .containsExactlyInAnyOrderElementsOf(
+            IntStream.range(0, producers * perProducer).boxed().collect(Collectors.toList()));
+    assertThat(buffer.isEmpty()).isTrue();
+  }
+}